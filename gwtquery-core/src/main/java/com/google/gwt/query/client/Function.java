@@ -212,11 +212,19 @@ public abstract class Function {
    * per-handler user data.
    */
   public boolean f(Event e, Object data) {
-    setData(data);
+    setEventData(data);
     setEvent(e);
     return f(e);
   }
 
+  // EventsListener sets the array of arguments of the binding before calling
+  // this method, so there is no need to allocate a new one per event.
+  private void setEventData(Object o) {
+    if (data == null || data.length != 1 || data[0] != o) {
+      setData(o);
+    }
+  }
+
   /**
    * Override this method for bound event handlers.
    *
@@ -34,6 +34,8 @@ import com.google.gwt.query.client.css.TakesCssValue;
 import com.google.gwt.query.client.css.TakesCssValue.CssSetter;
 import com.google.gwt.query.client.impl.AttributeImpl;
 import com.google.gwt.query.client.impl.DocumentStyleImpl;
+import com.google.gwt.query.client.impl.DomBatch;
+import com.google.gwt.query.client.impl.HtmlChunker;
 import com.google.gwt.query.client.impl.SelectorEngine;
 import com.google.gwt.query.client.js.JsCache;
 import com.google.gwt.query.client.js.JsMap;
@@ -115,10 +117,15 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
   public static final BodyElement body = Document.get().getBody();
 
   /**
-   * Object to store element data (public so as we can access to it from tests).
+   * Object to store element data when {@link #isDataExpando()} is false
+   * (public so as we can access to it from tests).
    */
   public static JsCache dataCache = null;
 
+  private static boolean dataExpando = true;
+
+  private static boolean dataStored = false;
+
   /**
    * The document element in the current page.
    */
@@ -150,11 +157,6 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
 
   private static JsMap<Class<? extends GQuery>, Plugin<? extends GQuery>> plugins;
 
-  // Sizzle POS regex : usefull in some methods
-  // TODO: Share this static with SelectorEngineSizzle
-  private static final String POS_REGEX =
-      ":(nth|eq|gt|lt|first|last|even|odd)(?:\\((\\d*)\\))?(?=[^\\-]|$)";
-
   /**
    * Implementation class used for style manipulations.
    */
@@ -474,7 +476,11 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
   }
 
   /**
-   * We store data in js object which has this structure:
+   * We store data in a js object per element which has this structure:
+   *
+   *  element.__gqdata [key] = value
+   *
+   * or, when {@link #isDataExpando()} is false, in a global js object:
    *
    *  datacache [element_hash] [key] = value
    *
@@ -487,20 +493,69 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     }
     element = element == window || element.getNodeName() == null ? windowData : element;
     if (element != null && key != null) {
-      int id = element.hashCode();
+      JsCache store = dataStore(element, value != null);
 
       if (value == null) {
-        return dataCache.exists(id) ? dataCache.getCache(id).get(key) : null;
+        return store == null ? null : store.get(key);
       }
 
-      if (!dataCache.exists(id)) {
-        dataCache.put(id, JsCache.createObject().cast());
-      }
-      dataCache.getCache(id).put(key, value);
+      dataStored = true;
+      store.put(key, value);
     }
     return value;
   }
 
+  /**
+   * Return true when the data of each element is stored in an expando object of the element
+   * itself, so as it is garbage collected with the node, false when it is stored in the
+   * global {@link #dataCache} indexed by the element hashCode.
+   */
+  public static boolean isDataExpando() {
+    return dataExpando;
+  }
+
+  /**
+   * Select where element data is stored, see {@link #isDataExpando()}. The mode can not be
+   * changed once some data has been stored, because the values stored with the other mode
+   * would not be visible.
+   */
+  public static void setDataExpando(boolean expando) {
+    if (expando != dataExpando && dataStored) {
+      throw new RuntimeException("The data storage mode can not be changed after storing data");
+    }
+    dataExpando = expando;
+  }
+
+  /**
+   * Return the object where the data of the element is stored, creating it if it does not
+   * exist and create is true.
+   */
+  private static JsCache dataStore(Element element, boolean create) {
+    if (dataExpando) {
+      return getDataExpando(element, create);
+    }
+    int id = element.hashCode();
+    JsCache store = dataCache.getCache(id);
+    if (store == null && create) {
+      store = JsCache.create();
+      dataCache.put(id, store);
+    }
+    return store;
+  }
+
+  private static native JsCache getDataExpando(Element elem, boolean create) /*-{
+    return elem.__gqdata || (create ? elem.__gqdata = {} : null);
+  }-*/;
+
+  private static native void removeDataExpando(Element elem) /*-{
+    try {
+      delete elem.__gqdata;
+    } catch (e) {
+      // old IE does not allow deleting expandos of elements
+      elem.__gqdata = undefined;
+    }
+  }-*/;
+
   /**
    * Execute a function around each object
    */
@@ -605,6 +660,16 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     Ajax.getJSONP(url, data, onSuccess);
   }
 
+  /**
+   * Return the engine used by gquery to run css selectors.
+   */
+  public static SelectorEngine getSelectorEngine() {
+    if (engine == null) {
+      engine = new SelectorEngine();
+    }
+    return engine;
+  }
+
   protected static DocumentStyleImpl getStyleImpl() {
     if (styleImpl == null) {
       styleImpl = GWT.create(DocumentStyleImpl.class);
@@ -727,6 +792,11 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
 
   private GQuery previousObject;
 
+  /**
+   * Whether style changes are queued in the {@link DomBatch}, see {@link #batch()}
+   */
+  private boolean batched = false;
+
   private GQuery() {
   }
 
@@ -738,6 +808,7 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     this(gq == null ? null : gq.get());
     currentSelector = gq.getSelector();
     currentContext = gq.getContext();
+    batched = gq.batched;
   }
 
   private GQuery(JsNodeArray nodes) {
@@ -1034,6 +1105,20 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     return domManip(html, DomMan.APPEND);
   }
 
+  /**
+   * Append a large html snippet to the inside of every matched element without blocking the
+   * browser: the html is parsed and inserted in chunks of about
+   * {@link HtmlChunker#DEFAULT_CHUNK_SIZE} characters in successive scheduler iterations. Use an
+   * {@link HtmlChunker} to insert it with other settings.
+   *
+   * The onComplete function, which could be null, is run for each matched element once all the
+   * content has been inserted.
+   */
+  public GQuery appendChunked(String html, Function onComplete) {
+    new HtmlChunker().append(this, html, onComplete);
+    return this;
+  }
+
   /**
    * All of the matched set of elements will be inserted at the end of the element(s) specified by
    * the parameter other.
@@ -1135,6 +1220,21 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     return this;
   }
 
+  /**
+   * Queue the style changes made by this object and the objects derived from it, so as
+   * they are applied in one pass at the next animation frame or when {@link #flush()} is
+   * called. Layout reads needed by these changes are run before all the writes, avoiding
+   * a forced reflow per element when iterating over large sets.
+   *
+   * Getters are not delayed, so they return the values previous to the queued changes.
+   *
+   * Ex: $(".row").batch().css("color", "red").offset(10, 10);
+   */
+  public GQuery batch() {
+    batched = true;
+    return this;
+  }
+
   /**
    * Insert content before each of the matched elements. The elements must already be inserted into
    * the document (you can't insert an element before another if it's not in the page).
@@ -1339,13 +1439,13 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
       context = currentContext;
     }
 
-    GQuery pos = selector.matches(POS_REGEX) ? $(selector, context) : null;
+    GQuery pos = getSelectorEngine().isPositional(selector) ? $(selector, context) : null;
     JsNodeArray result = JsNodeArray.create();
 
     for (Element e : elements) {
       Element current = e;
       while (current != null && current.getOwnerDocument() != null && current != context) {
-        boolean match = pos != null ? pos.index(current) > -1 : $(current).is(selector);
+        boolean match = pos != null ? pos.index(current) > -1 : engine.matches(current, selector);
         if (match) {
           result.addNode(current);
           break;
@@ -1393,7 +1493,7 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
       JsNamedArray<GQuery> matches = JsNamedArray.create();
       for (String selector : selectors) {
         if (!matches.exists(selector)) {
-          matches.put(selector, selector.matches(POS_REGEX) ? $(selector, context) : null);
+          matches.put(selector, getSelectorEngine().isPositional(selector) ? $(selector, context) : null);
         }
       }
 
@@ -1403,7 +1503,7 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
         for (String selector : matches.keys()) {
 
           GQuery pos = matches.get(selector);
-          boolean match = pos != null ? pos.index(current) > -1 : $(current).is(selector);
+          boolean match = pos != null ? pos.index(current) > -1 : engine.matches(current, selector);
 
           if (match) {
             JsNodeArray elementsMatchingSelector = results.get(selector).cast();
@@ -1477,7 +1577,16 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * </pre>
    *
    */
-  public GQuery css(CssSetter... cssSetter) {
+  public GQuery css(final CssSetter... cssSetter) {
+    if (batched) {
+      final GQuery g = unbatched();
+      DomBatch.write(new Function() {
+        public void f() {
+          g.css(cssSetter);
+        }
+      });
+      return this;
+    }
     for (Element e : elements) {
       for (CssSetter s : cssSetter) {
         s.applyCss(e);
@@ -1551,6 +1660,9 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * it returns an empty string unless you pass the parameter force=true.
    */
   public String css(String name, boolean force) {
+    if (batched && force) {
+      DomBatch.onRead();
+    }
     return isEmpty() ? "" : getStyleImpl().curCSS(get(0), name, force);
   }
 
@@ -1558,7 +1670,16 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * Set a single style property to a value, on all matched elements.
    *
    */
-  public GQuery css(String prop, String val) {
+  public GQuery css(final String prop, final String val) {
+    if (batched) {
+      final GQuery g = unbatched();
+      DomBatch.write(new Function() {
+        public void f() {
+          g.css(prop, val);
+        }
+      });
+      return this;
+    }
     for (Element e : elements) {
       getStyleImpl().setStyleProperty(e, prop, val);
     }
@@ -1593,6 +1714,9 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * property defined in the set of style attributes. - When true returns the real computed value.
    */
   public double cur(String prop, boolean force) {
+    if (batched) {
+      DomBatch.onRead();
+    }
     return isEmpty() ? 0 : getStyleImpl().cur(get(0), prop, force);
   }
 
@@ -1934,41 +2058,55 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     if (elms.length == 0) {
       elms = elements;
     }
+    int size = g.size();
+    if (size == 0 || elms.length == 0) {
+      return this;
+    }
+    // Put all the nodes in a fragment, so as each target is modified with just one call
+    Node nodes = g.get(0);
+    if (size > 1) {
+      nodes = createDocumentFragment(JsUtils.getOwnerDocument(elms[0]));
+      for (int j = 0; j < size; j++) {
+        nodes.appendChild(g.get(j));
+      }
+    }
+    // If an element selected is inserted elsewhere, it will be moved into the target (not
+    // cloned). If there is more than one target element, however, cloned copies of the
+    // inserted element will be created for each target after the first
+    Node copy = elms.length > 1 ? nodes.cloneNode(true) : null;
     for (int i = 0, l = elms.length; i < l; i++) {
       Element e = elms[i];
       if (e.getNodeType() == Node.DOCUMENT_NODE) {
         e = e.<Document> cast().getBody();
       }
-      for (int j = 0, size = g.size(); j < size; j++) {
-        // Widget w = getAssociatedWidget(g.get(j));
-        // GqUi.detachWidget(w);
-
-        Node n = g.get(j);
-        // If an element selected is inserted elsewhere, it will be moved into the target (not
-        // cloned).
-        // If there is more than one target element, however, cloned copies of the inserted element
-        // will be created for each target after the first
-        if (i > 0) {
-          n = n.cloneNode(true);
+      Node n = i == 0 ? nodes : i == l - 1 ? copy : copy.cloneNode(true);
+      if (size > 1) {
+        // the fragment is empty once inserted
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling()) {
+          newNodes.addNode(c);
         }
-        switch (type) {
-          case PREPEND:
-            newNodes.addNode(e.insertBefore(n, e.getFirstChild()));
-            break;
-          case APPEND:
-            newNodes.addNode(e.appendChild(n));
-            break;
-          case AFTER:
-            newNodes.addNode(e.getParentNode().insertBefore(n, e.getNextSibling()));
-            break;
-          case BEFORE:
-            newNodes.addNode(e.getParentNode().insertBefore(n, e));
-            break;
-        }
-        EventsListener.rebind(n.<Element> cast());
-        // GqUi.attachWidget(w);
+      } else {
+        newNodes.addNode(n);
+      }
+      switch (type) {
+        case PREPEND:
+          e.insertBefore(n, e.getFirstChild());
+          break;
+        case APPEND:
+          e.appendChild(n);
+          break;
+        case AFTER:
+          e.getParentNode().insertBefore(n, e.getNextSibling());
+          break;
+        case BEFORE:
+          e.getParentNode().insertBefore(n, e);
+          break;
       }
     }
+    // Restore event handlers once all nodes are in the document
+    for (int i = 0, l = newNodes.size(); i < l; i++) {
+      EventsListener.rebind(newNodes.getElement(i));
+    }
     // TODO: newNodes.size() > g.size() makes testRebind fail
     if (newNodes.size() >= g.size()) {
       g.setArray(newNodes);
@@ -1978,19 +2116,35 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
 
   // TODO: this should be handled by the other domManip method
   private GQuery domManip(String htmlString, DomMan type) {
-    JsMap<Document, GQuery> cache = JsMap.createObject().cast();
+    // group targets by document, the snippet is parsed once per document
+    JsMap<Document, JsObjectArray<Element>> targets = JsMap.createObject().cast();
+    JsObjectArray<Document> docs = JsObjectArray.create();
     for (Element e : elements) {
       Document d = JsUtils.getOwnerDocument(e);
-      GQuery g = cache.get(d);
-      if (g == null) {
-        g = cleanHtmlString(htmlString, d);
-        cache.put(d, g);
+      JsObjectArray<Element> t = targets.get(d);
+      if (t == null) {
+        t = JsObjectArray.create();
+        targets.put(d, t);
+        docs.add(d);
+      }
+      t.add(e);
+    }
+    for (int i = 0, l = docs.length(); i < l; i++) {
+      Document d = docs.get(i);
+      JsObjectArray<Element> t = targets.get(d);
+      Element[] elms = new Element[t.length()];
+      for (int j = 0; j < elms.length; j++) {
+        elms[j] = t.get(j);
       }
-      domManip(g.clone(), type, e);
+      domManip(cleanHtmlString(htmlString, d), type, elms);
     }
     return this;
   }
 
+  private static native Node createDocumentFragment(Document d) /*-{
+    return d.createDocumentFragment();
+  }-*/;
+
   /**
    * Run one or more Functions over each element of the GQuery. You have to override one of these
    * funcions: public void f(Element e) public String f(Element e, int i)
@@ -2134,45 +2288,53 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * Removes all elements from the set of matched elements that do not pass the specified css
    * expression. This method is used to narrow down the results of a search.
    */
-  // TODO performance bad...
   public GQuery filter(String... filters) {
     if (filters.length == 0 || filters[0] == null) {
       return this;
     }
-    
-    JsNodeArray array = JsNodeArray.create();
-    /*
-     * StringBuilder filterBuilder = new StringBuilder(); for (int i = 0; i < filters.length ; i++){
-     * filterBuilder.append(filters[i]); if (i < filters.length - 1){ filterBuilder.append(","); } }
-     *
-     * String filter = filterBuilder.toString();
-     */
 
+    JsNodeArray array = JsNodeArray.create();
     for (String f : filters) {
-      for (Element e : elements) {
-        boolean ghostParent = false;
-
-        if (e.getParentNode() == null) {
-          DOM.createDiv().appendChild(e);
-          ghostParent = true;
-        }
-
-        for (Element c : $(f, e.getParentNode()).elements) {
-          if (c == e) {
-            array.addNode(c);
-            break;
+      if (getSelectorEngine().isPositional(f)) {
+        filterPositional(f, array);
+      } else {
+        for (Element e : elements) {
+          if (engine.matches(e, f)) {
+            array.addNode(e);
           }
         }
-
-        if (ghostParent) {
-          e.removeFromParent();
-        }
       }
     }
 
     return pushStack(unique(array), "filter", filters[0]);
   }
 
+  /**
+   * Positional selectors depend on the set of elements, so we have to run
+   * them in the context of each element's parent and look for the element.
+   */
+  private void filterPositional(String f, JsNodeArray array) {
+    for (Element e : elements) {
+      boolean ghostParent = false;
+
+      if (e.getParentNode() == null) {
+        DOM.createDiv().appendChild(e);
+        ghostParent = true;
+      }
+
+      for (Element c : $(f, e.getParentNode()).elements) {
+        if (c == e) {
+          array.addNode(c);
+          break;
+        }
+      }
+
+      if (ghostParent) {
+        e.removeFromParent();
+      }
+    }
+  }
+
   /**
    * Searches for all elements that match the specified css expression. This method is a good way to
    * find additional descendant elements with which to process.
@@ -2198,6 +2360,14 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     return eq(0);
   }
 
+  /**
+   * Apply now all the style changes queued by batched objects.
+   */
+  public GQuery flush() {
+    DomBatch.flush();
+    return this;
+  }
+
   /**
    * Bind a set of functions to the focus event of each matched element. Or trigger the event and
    * move the input focus to the first element if no functions are provided.
@@ -2326,7 +2496,16 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
   /**
    * Set the height of every element in the matched set.
    */
-  public GQuery height(int height) {
+  public GQuery height(final int height) {
+    if (batched) {
+      final GQuery g = unbatched();
+      DomBatch.write(new Function() {
+        public void f() {
+          g.height(height);
+        }
+      });
+      return this;
+    }
     for (Element e : elements) {
       e.getStyle().setPropertyPx("height", height);
     }
@@ -2393,6 +2572,16 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     return this;
   }
 
+  /**
+   * Set the content of every matched element with a large html snippet without blocking the
+   * browser, it works like {@link #appendChunked(String, Function)} but the content of the
+   * elements is removed before inserting the first chunk.
+   */
+  public GQuery htmlChunked(String html, Function onComplete) {
+    new HtmlChunker().html(this, html, onComplete);
+    return this;
+  }
+
   /**
    * Get the id of the first matched element.
    */
@@ -2500,7 +2689,23 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * expression is not valid.
    */
   public boolean is(String... filters) {
-    return !filter(filters).isEmpty();
+    if (filters.length == 0 || filters[0] == null) {
+      return !isEmpty();
+    }
+    for (String f : filters) {
+      if (getSelectorEngine().isPositional(f)) {
+        if (!filter(f).isEmpty()) {
+          return true;
+        }
+      } else {
+        for (Element e : elements) {
+          if (engine.matches(e, f)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
   }
 
   /**
@@ -2646,6 +2851,9 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * </pre>
    * The {@link Function} will be called only on elements having the class "clickable" and being
    * descendant of myElement.</li>
+   * <li>
+   * Without a context element, live events are dispatched by one native listener per event type
+   * in the document, the matched elements don't need any listener.</li>
    * </ul>
    * </p>
    */
@@ -2700,6 +2908,9 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * </pre>
    * The {@link Function} will be called only on elements having the class "clickable" and being
    * descendant of myElement.</li>
+   * <li>
+   * Without a context element, live events are dispatched by one native listener per event type
+   * in the document, the matched elements don't need any listener.</li>
    * </ul>
    * </p>
    */
@@ -2987,7 +3198,17 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
   public GQuery not(String... filters) {
     GQuery ret = this;
     for (String f : filters) {
-      ret = ret.not($(f));
+      if (getSelectorEngine().isPositional(f)) {
+        ret = ret.not($(f));
+      } else {
+        JsNodeArray array = JsNodeArray.create();
+        for (Element e : ret.elements) {
+          if (!engine.matches(e, f)) {
+            array.addNode(e);
+          }
+        }
+        ret = $(array);
+      }
     }
     return ret;
   }
@@ -2998,6 +3219,9 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * visible elements.
    */
   public Offset offset() {
+    if (batched) {
+      DomBatch.onRead();
+    }
     Element e = get(0);
     return e == null ? new Offset(0, 0) : new Offset(e.getAbsoluteLeft(), e.getAbsoluteTop());
   }
@@ -3013,49 +3237,75 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
   /**
    * Set the current coordinates of every element in the set of matched elements, relative to the document.
    */
-  public GQuery offset(int top, int left) {
-    for (Element element : elements()){
-      GQuery $element = $(element);
+  public GQuery offset(final int top, final int left) {
+    final Element[] elems = elements();
+    final long[] offsets = new long[elems.length * 2];
+    final boolean[] relative = new boolean[elems.length];
+
+    // Compute all the positions in a separate loop, so as we don't force
+    // a reflow per element.
+    Function read = new Function() {
+      public void f() {
+        for (int i = 0; i < elems.length; i++) {
+          GQuery $element = $(elems[i]);
+
+          String position = $element.css("position", true);
+          relative[i] = "static".equals(position);
+
+          Offset curOffset = $element.offset();
+          String curCSSTop = $element.css("top", true);
+          String curCSSLeft = $element.css("left", true);
+          long curTop = 0;
+          long curLeft = 0;
+
+          if (("absolute".equals(position) || "fixed".equals(position))
+              && ("auto".equals(curCSSTop) || "auto".equals(curCSSLeft))) {
+            Offset curPosition = $element.position();
+            curTop = curPosition.top;
+            curLeft = curPosition.left;
+          } else {
+            try {
+              curTop = Long.parseLong(curCSSTop);
+            } catch (NumberFormatException e) {
+              curTop = 0;
+            }
 
-      String position = $element.css("position", true);
-      if ("static".equals(position)) {
-        css("position", "relative");
-      }
+            try {
+              curLeft = Long.parseLong(curCSSLeft);
+            } catch (NumberFormatException e) {
+              curLeft = 0;
+            }
+          }
 
-      Offset curOffset = $element.offset();
-      String curCSSTop = $element.css("top", true);
-      String curCSSLeft = $element.css("left", true);
-      long curTop = 0;
-      long curLeft = 0;
-
-      if (("absolute".equals(position) || "fixed".equals(position)) && ("auto".equals(curCSSTop) || "auto".equals
-          (curCSSLeft))) {
-        Offset curPosition = $element.position();
-        curTop = curPosition.top;
-        curLeft = curPosition.left;
-      } else {
-        try {
-          curTop = Long.parseLong(curCSSTop);
-        } catch (NumberFormatException e) {
-          curTop = 0;
+          offsets[i * 2] = top - curOffset.top + curTop;
+          offsets[i * 2 + 1] = left - curOffset.left + curLeft;
         }
+      }
+    };
 
-        try {
-          curLeft = Long.parseLong(curCSSLeft);
-        } catch (NumberFormatException e) {
-          curLeft = 0;
+    Function write = new Function() {
+      public void f() {
+        for (int i = 0; i < elems.length; i++) {
+          if (relative[i]) {
+            getStyleImpl().setStyleProperty(elems[i], "position", "relative");
+          }
+          getStyleImpl().setStyleProperty(elems[i], "top", "" + offsets[i * 2]);
+          getStyleImpl().setStyleProperty(elems[i], "left", "" + offsets[i * 2 + 1]);
         }
       }
+    };
 
-      long newTop = top - curOffset.top + curTop;
-      long newLeft = left - curOffset.left + curLeft;
-
-      $element.css("top", "" + newTop).css("left", "" + newLeft);
+    if (batched) {
+      DomBatch.read(read);
+      DomBatch.write(write);
+    } else {
+      read.f();
+      write.f();
     }
-
     return this;
   }
 
+
   /**
    * Returns a GQuery collection with the positioned parent of the first matched element. This is
    * the first parent of the element that has position (as in relative or absolute). This method
@@ -3200,6 +3450,9 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
    * values for margins, borders and padding. This method only works with visible elements.
    */
   public Offset position() {
+    if (batched) {
+      DomBatch.onRead();
+    }
     if (isEmpty()) {
       return new Offset(0, 0);
     }
@@ -3478,6 +3731,7 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     g.setPreviousObject(this);
     g.setSelector(selector);
     g.currentContext = currentContext;
+    g.batched = batched;
     return g;
   }
 
@@ -3627,17 +3881,22 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
       dataCache = JavaScriptObject.createObject().cast();
     }
     item = item == window || item.getNodeName() == null ? windowData : item;
-    int id = item.hashCode();
+    JsCache store = dataStore(item, false);
+    if (store == null) {
+      return;
+    }
     if (name != null) {
-      if (dataCache.exists(id)) {
-        dataCache.getCache(id).delete(name);
-      }
-      if (dataCache.getCache(id).isEmpty()) {
+      store.delete(name);
+      if (store.isEmpty()) {
         removeData(item, null);
       }
     } else {
       // when the element cache is empty we remove its entry to save memory (issue 132)
-      dataCache.delete(id);
+      if (dataExpando) {
+        removeDataExpando(item);
+      } else {
+        dataCache.delete(item.hashCode());
+      }
     }
   }
 
@@ -3910,11 +4169,7 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
   }
 
   private GQuery select(String selector, Node context) {
-    if (engine == null) {
-      engine = new SelectorEngine();
-    }
-
-    NodeList<Element> n = engine.select(selector, context == null ? document : context);
+    NodeList<Element> n = getSelectorEngine().select(selector, context == null ? document : context);
     currentSelector = selector;
     currentContext = context != null ? context : document;
     return setArray(n);
@@ -4246,6 +4501,15 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
     return as(Events).trigger(eventbits, keys);
   }
 
+  /**
+   * Return a copy of this object which applies the style changes immediately.
+   */
+  private GQuery unbatched() {
+    GQuery g = new GQuery(this);
+    g.batched = false;
+    return g;
+  }
+
   /**
    * Removes all events that match the eventbits.
    */
@@ -4568,7 +4832,16 @@ public class GQuery implements Lazy<GQuery, LazyGQuery> {
   /**
    * Set the width of every matched element.
    */
-  public GQuery width(int width) {
+  public GQuery width(final int width) {
+    if (batched) {
+      final GQuery g = unbatched();
+      DomBatch.write(new Function() {
+        public void f() {
+          g.width(width);
+        }
+      });
+      return this;
+    }
     for (Element e : elements) {
       e.getStyle().setPropertyPx("width", width);
     }
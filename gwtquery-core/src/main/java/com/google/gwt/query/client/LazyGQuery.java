@@ -40,6 +40,7 @@ import com.google.gwt.query.client.css.TakesCssValue;
 import com.google.gwt.query.client.css.TakesCssValue.CssSetter;
 import com.google.gwt.query.client.impl.AttributeImpl;
 import com.google.gwt.query.client.impl.DocumentStyleImpl;
+import com.google.gwt.query.client.impl.HtmlChunker;
 import com.google.gwt.query.client.impl.SelectorEngine;
 import com.google.gwt.query.client.js.JsCache;
 import com.google.gwt.query.client.js.JsMap;
@@ -284,6 +285,17 @@ public interface LazyGQuery<T> extends LazyBase<T>{
    */
   LazyGQuery<T> append(String html);
 
+  /**
+   * Append a large html snippet to the inside of every matched element without blocking the
+   * browser: the html is parsed and inserted in chunks of about
+   * {@link HtmlChunker#DEFAULT_CHUNK_SIZE} characters in successive scheduler iterations. Use an
+   * {@link HtmlChunker} to insert it with other settings.
+   *
+   * The onComplete function, which could be null, is run for each matched element once all the
+   * content has been inserted.
+   */
+  LazyGQuery<T> appendChunked(String html, Function onComplete);
+
   /**
    * All of the matched set of elements will be inserted at the end of the element(s) specified by
    * the parameter other.
@@ -341,6 +353,18 @@ public interface LazyGQuery<T> extends LazyBase<T>{
    */
   LazyGQuery<T> attr(String key, Object value);
 
+  /**
+   * Queue the style changes made by this object and the objects derived from it, so as
+   * they are applied in one pass at the next animation frame or when {@link #flush()} is
+   * called. Layout reads needed by these changes are run before all the writes, avoiding
+   * a forced reflow per element when iterating over large sets.
+   *
+   * Getters are not delayed, so they return the values previous to the queued changes.
+   *
+   * Ex: $(".row").batch().css("color", "red").offset(10, 10);
+   */
+  LazyGQuery<T> batch();
+
   /**
    * Insert content before each of the matched elements. The elements must already be inserted into
    * the document (you can't insert an element before another if it's not in the page).
@@ -998,6 +1022,11 @@ public interface LazyGQuery<T> extends LazyBase<T>{
    */
   LazyGQuery<T> first();
 
+  /**
+   * Apply now all the style changes queued by batched objects.
+   */
+  LazyGQuery<T> flush();
+
   /**
    * Bind a set of functions to the focus event of each matched element. Or trigger the event and
    * move the input focus to the first element if no functions are provided.
@@ -1103,6 +1132,13 @@ public interface LazyGQuery<T> extends LazyBase<T>{
    */
   LazyGQuery<T> html(String html);
 
+  /**
+   * Set the content of every matched element with a large html snippet without blocking the
+   * browser, it works like {@link #appendChunked(String, Function)} but the content of the
+   * elements is removed before inserting the first chunk.
+   */
+  LazyGQuery<T> htmlChunked(String html, Function onComplete);
+
   /**
    * Get the id of the first matched element.
    */
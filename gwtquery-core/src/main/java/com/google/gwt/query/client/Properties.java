@@ -17,6 +17,7 @@ package com.google.gwt.query.client;
 
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.JsArrayMixed;
+import com.google.gwt.query.client.impl.LruCache;
 import com.google.gwt.query.client.js.JsCache;
 import com.google.gwt.query.client.js.JsUtils;
 
@@ -25,15 +26,67 @@ import com.google.gwt.query.client.js.JsUtils;
  */
 public class Properties extends JavaScriptObject {
 
+  /**
+   * Initial size of the cache of parsed properties strings, use
+   * <code>getCache().setMaxSize(..)</code> to change it.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 128;
+
+  // A parsed properties string, it is never returned to callers
+  private static class Template {
+    final String json;
+    final Properties props;
+    final boolean flat;
+
+    Template(String json, Properties props) {
+      this.json = json;
+      this.props = props;
+      this.flat = isFlat(props);
+    }
+
+    Properties copy() {
+      // nested objects would be shared by a shallow copy
+      return flat ? props.cloneProps() : JsUtils.parseJSON(json);
+    }
+  }
+
+  private static LruCache<String, Template> cache = new LruCache<String, Template>(DEFAULT_CACHE_SIZE);
+
+  /**
+   * Return the cache of parsed properties strings, useful to inspect the hits
+   * and misses counters or to change its size. A size of zero disables it.
+   */
+  public static LruCache<String, ?> getCache() {
+    return cache;
+  }
+
   public static Properties create() {
     return JsCache.create().cast();
   }
 
+  /**
+   * Create a Properties object from a string with the relaxed syntax described
+   * in {@link PropertiesParser}.
+   *
+   * Parsed strings are kept in a cache, each call returns a new copy so it can
+   * be modified safely.
+   */
   public static Properties create(String properties) {
     if (properties != null && !properties.isEmpty()) {
-      String p = wrapPropertiesString(properties);
+      Template t = cache.getMaxSize() == 0 ? null : cache.get(properties);
+      if (t != null) {
+        return t.copy();
+      }
+      String p = null;
       try {
-        return JsUtils.parseJSON(p);
+        p = wrapPropertiesString(properties);
+        Properties ret = JsUtils.parseJSON(p);
+        if (cache.getMaxSize() > 0) {
+          t = new Template(p, ret);
+          cache.put(properties, t);
+          return t.copy();
+        }
+        return ret;
       } catch (Exception e) {
         System.err.println("Error creating Properties: \n> " + properties  + "\n< " + p + "\n" + e.getMessage());
       }
@@ -41,27 +94,22 @@ public class Properties extends JavaScriptObject {
     return create();
   }
 
+  // Return true when the object does not contain objects or arrays
+  private static native boolean isFlat(JavaScriptObject o) /*-{
+    if (!o || Object.prototype.toString.call(o) == '[object Array]') return false;
+    for (var k in o) {
+      var v = o[k];
+      if (v && typeof v == 'object') return false;
+    }
+    return true;
+  }-*/;
+
+  /**
+   * Convert the relaxed syntax used in properties strings to json, see
+   * {@link PropertiesParser}.
+   */
   public static String wrapPropertiesString(String s) {
-    String ret = s //
-        .replaceAll("\\s*/\\*[\\s\\S]*?\\*/\\s*", "") // Remove comments
-        .replaceAll("([:\\)\\(,;}{'\"])\\s+" , "$1") // Remove spaces
-        .replaceAll("\\s+([:\\)\\(,;}{'\"])" , "$1") // Remove spaces
-        .replaceFirst("^[\\(]+(.*)[\\)]+$", "$1") // Remove ()
-        .replaceAll("\\([\"']([^\\)]+)[\"']\\)" , "($1)") // Remove quotes
-        .replaceAll("[;,]+([\\w-\\$]+):", ";$1:") // Change comma by semicolon
-        .replaceAll("([^,;])([\\]}])", "$1;$2") // Put control semicolon used below
-        .replaceAll(":\\s*[\"']?([^;\\{\\}\\[\\]\"']*)[\"']?\\s*([;,]+|$)", ":\"$1\";") // put quotes to all values (even empty)
-        .replaceAll("[;,]+([\\w-]+):", ";$1:") // Change semicolon by comma
-        .replaceAll("(^|[^\\w-\\$'])([\\w-\\$]+):(['\"\\[{])", "$1\"$2\":$3") // quote keys
-        .replaceAll("(^|[^\\w-\\$'])([\\w-\\$]+):(['\"\\[{])", "$1\"$2\":$3") // quote keys second pass
-        .replaceAll("(|[\\[\\]\\{\\},\\(])'([^']*)'", "$1\"$2\"") // Replace single-quote by double-quote
-        .replaceAll(";([^:]+):", ",$1:") // change semicolon
-        .replaceAll(";([^:]+):", ",$1:") // change semicolon second pass
-        .replaceAll(":\"(-?\\d[\\d\\.]*|null|false|true)\"[;,]", ":$1,") // numbers do not need quote
-        .replaceAll("[;,]+([\\]\\}]|$)", "$1") // remove endings
-        ;
-    ret = ret.matches("(^[\\[\\{].*[\\]\\}]$)") ? ret : "{" + ret + "}";
-    return ret;
+    return PropertiesParser.toJson(s);
   }
 
   protected Properties() {
@@ -78,7 +126,7 @@ public class Properties extends JavaScriptObject {
 
   public final native Properties cloneProps() /*-{
     var props = {};
-    for(p in this) {
+    for(var p in this) {
       props[p] =  this[p];
     }
     return props;
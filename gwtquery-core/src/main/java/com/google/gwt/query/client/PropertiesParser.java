@@ -0,0 +1,404 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client;
+
+/**
+ * Single pass parser which converts the relaxed syntax accepted by
+ * {@link Properties#create(String)} into strict json.
+ *
+ * The syntax is a javascript object literal where the enclosing braces or
+ * parenthesis are optional, members can be separated by commas or
+ * semicolons, keys and values do not need quotes, and comments are allowed.
+ * Values which look like numbers, booleans or null are not quoted, even if
+ * they were quoted in the input, except inside arrays.
+ */
+final class PropertiesParser {
+
+  // Spaces next to these characters are removed from values
+  private static final String TRIM = ":)(,;}{'\"";
+
+  /**
+   * Convert a properties string to json, throws an IllegalArgumentException
+   * when the string is malformed.
+   */
+  static String toJson(String s) {
+    return new PropertiesParser(s).parse();
+  }
+
+  private final String s;
+  private final StringBuilder out;
+  private int pos, end;
+
+  private PropertiesParser(String s) {
+    this.s = s;
+    end = s.length();
+    out = new StringBuilder(end + 16);
+  }
+
+  private String parse() {
+    ws();
+    // remove the enclosing parenthesis: ({a: 1})
+    while (pos < end && s.charAt(pos) == '(') {
+      int e = end;
+      while (e > pos && isSpace(s.charAt(e - 1))) {
+        e--;
+      }
+      if (e == pos || s.charAt(e - 1) != ')') {
+        break;
+      }
+      pos++;
+      end = e - 1;
+      ws();
+    }
+    if (pos < end && (s.charAt(pos) == '{' || s.charAt(pos) == '[')) {
+      value(false, (char) 0);
+    } else {
+      members((char) 0);
+    }
+    ws();
+    if (pos < end) {
+      throw error("unexpected character");
+    }
+    return out.toString();
+  }
+
+  private void members(char close) {
+    out.append('{');
+    boolean first = true;
+    while (true) {
+      separators(",;");
+      if (pos >= end || close != 0 && s.charAt(pos) == close) {
+        break;
+      }
+      if (!first) {
+        out.append(',');
+      }
+      first = false;
+      key();
+      ws();
+      expect(':');
+      out.append(':');
+      ws();
+      value(true, close);
+    }
+    if (close != 0) {
+      expect(close);
+    }
+    out.append('}');
+  }
+
+  private void elements() {
+    out.append('[');
+    boolean first = true;
+    while (true) {
+      separators(",");
+      if (pos >= end || s.charAt(pos) == ']') {
+        break;
+      }
+      if (!first) {
+        out.append(',');
+      }
+      first = false;
+      value(false, ']');
+    }
+    expect(']');
+    out.append(']');
+  }
+
+  private void key() {
+    if (pos < end && (s.charAt(pos) == '\'' || s.charAt(pos) == '"')) {
+      string(quoted());
+      return;
+    }
+    int start = pos;
+    while (pos < end && isWordChar(s.charAt(pos))) {
+      pos++;
+    }
+    if (pos == start) {
+      throw error("expected a key");
+    }
+    string(s.substring(start, pos));
+  }
+
+  /**
+   * Write a value, in objects quoted values which look like literals are
+   * written as literals.
+   */
+  private void value(boolean inObject, char close) {
+    char c = pos < end ? s.charAt(pos) : 0;
+    if (c == '{') {
+      pos++;
+      members('}');
+    } else if (c == '[') {
+      pos++;
+      elements();
+    } else if (c == '\'' || c == '"') {
+      String v = trimSpaces(quoted());
+      if (inObject && isLiteral(v)) {
+        out.append(v);
+      } else {
+        string(v);
+      }
+      ws();
+    } else {
+      String v = unquoted(inObject, close);
+      if (isLiteral(v)) {
+        out.append(v);
+      } else {
+        string(v);
+      }
+    }
+  }
+
+  /**
+   * Read a value without quotes, it finishes with a separator at the top
+   * level. In objects a comma is a separator only when a key follows it.
+   */
+  private String unquoted(boolean inObject, char close) {
+    int start = pos, depth = 0;
+    while (pos < end) {
+      char c = s.charAt(pos);
+      if (c == '\'' || c == '"') {
+        int e = s.indexOf(c, pos + 1);
+        pos = e < 0 ? end : e + 1;
+        continue;
+      } else if (c == '/' && pos + 1 < end && s.charAt(pos + 1) == '*') {
+        break;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')' && depth > 0) {
+        depth--;
+      } else if (depth == 0) {
+        if (c == ';' || c == close || "{}[]".indexOf(c) >= 0
+            || c == ',' && (!inObject || isKeyAt(pos + 1))) {
+          break;
+        }
+      }
+      pos++;
+    }
+    return unquoteParens(trimSpaces(s.substring(start, pos)));
+  }
+
+  /**
+   * Read a quoted string and return its content with the escapes resolved.
+   */
+  private String quoted() {
+    char q = s.charAt(pos++);
+    StringBuilder b = new StringBuilder();
+    while (pos < end) {
+      char c = s.charAt(pos++);
+      if (c == q) {
+        return b.toString();
+      } else if (c == '\\' && pos < end) {
+        c = s.charAt(pos++);
+        switch (c) {
+          case 'n': b.append('\n'); break;
+          case 't': b.append('\t'); break;
+          case 'r': b.append('\r'); break;
+          case 'b': b.append('\b'); break;
+          case 'f': b.append('\f'); break;
+          case 'u':
+            if (pos + 4 <= end) {
+              b.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+              pos += 4;
+              break;
+            }
+          default: b.append(c);
+        }
+      } else {
+        b.append(c);
+      }
+    }
+    throw error("unterminated string");
+  }
+
+  private boolean isKeyAt(int p) {
+    while (p < end) {
+      char c = s.charAt(p);
+      if (isSpace(c) || c == ',') {
+        p++;
+      } else if (c == '/' && p + 1 < end && s.charAt(p + 1) == '*') {
+        int e = s.indexOf("*/", p + 2);
+        p = e < 0 ? end : e + 2;
+      } else {
+        break;
+      }
+    }
+    if (p < end && (s.charAt(p) == '\'' || s.charAt(p) == '"')) {
+      int e = s.indexOf(s.charAt(p), p + 1);
+      if (e < 0) {
+        return false;
+      }
+      p = e + 1;
+    } else {
+      int start = p;
+      while (p < end && isWordChar(s.charAt(p))) {
+        p++;
+      }
+      if (p == start) {
+        return false;
+      }
+    }
+    while (p < end && isSpace(s.charAt(p))) {
+      p++;
+    }
+    return p < end && s.charAt(p) == ':';
+  }
+
+  private void separators(String chars) {
+    while (true) {
+      if (pos < end && chars.indexOf(s.charAt(pos)) >= 0) {
+        pos++;
+      } else if (!ws()) {
+        return;
+      }
+    }
+  }
+
+  private void expect(char c) {
+    if (pos >= end || s.charAt(pos) != c) {
+      throw error("expected '" + c + "'");
+    }
+    pos++;
+  }
+
+  private IllegalArgumentException error(String msg) {
+    return new IllegalArgumentException(msg + " at " + pos + " in: " + s);
+  }
+
+  private void string(String v) {
+    out.append('"');
+    for (int i = 0, l = v.length(); i < l; i++) {
+      char c = v.charAt(i);
+      switch (c) {
+        case '"': out.append("\\\""); break;
+        case '\\': out.append("\\\\"); break;
+        case '\n': out.append("\\n"); break;
+        case '\r': out.append("\\r"); break;
+        case '\t': out.append("\\t"); break;
+        default:
+          if (c < 0x20) {
+            String h = Integer.toHexString(c);
+            out.append("\\u").append("0000".substring(h.length())).append(h);
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+
+  /**
+   * Skip spaces and comments, return true if something was skipped.
+   */
+  private boolean ws() {
+    int start = pos;
+    while (pos < end) {
+      char c = s.charAt(pos);
+      if (isSpace(c)) {
+        pos++;
+      } else if (c == '/' && pos + 1 < end && s.charAt(pos + 1) == '*') {
+        int e = s.indexOf("*/", pos + 2);
+        pos = e < 0 || e + 2 > end ? end : e + 2;
+      } else {
+        break;
+      }
+    }
+    return pos > start;
+  }
+
+  private static boolean isLiteral(String v) {
+    if ("null".equals(v) || "true".equals(v) || "false".equals(v)) {
+      return true;
+    }
+    int i = v.startsWith("-") ? 1 : 0, l = v.length(), digits = 0;
+    boolean dot = false;
+    for (; i < l; i++) {
+      char c = v.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits++;
+      } else if (c == '.' && !dot && digits > 0 && i < l - 1) {
+        dot = true;
+      } else {
+        return false;
+      }
+    }
+    return digits > 0;
+  }
+
+  private static boolean isSpace(char c) {
+    return c <= ' ';
+  }
+
+  private static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '-';
+  }
+
+  /**
+   * Remove the spaces at both ends and next to punctuation: 'rgb(0, 0, 139)'
+   * becomes 'rgb(0,0,139)'.
+   */
+  private static String trimSpaces(String v) {
+    int l = v.length(), i = 0;
+    while (i < l && !isSpace(v.charAt(i))) {
+      i++;
+    }
+    if (i == l) {
+      return v;
+    }
+    StringBuilder b = new StringBuilder(l).append(v, 0, i);
+    for (; i < l; i++) {
+      char c = v.charAt(i);
+      if (isSpace(c)) {
+        int j = i;
+        while (j < l && isSpace(v.charAt(j))) {
+          j++;
+        }
+        if (i > 0 && j < l && TRIM.indexOf(v.charAt(i - 1)) < 0 && TRIM.indexOf(v.charAt(j)) < 0) {
+          b.append(v, i, j);
+        }
+        i = j - 1;
+      } else {
+        b.append(c);
+      }
+    }
+    return b.toString();
+  }
+
+  /**
+   * Remove the quotes of arguments: url('a.png') becomes url(a.png).
+   */
+  private static String unquoteParens(String v) {
+    int i = v.indexOf('(');
+    if (i < 0) {
+      return v;
+    }
+    StringBuilder b = new StringBuilder(v.length());
+    int last = 0;
+    while (i >= 0) {
+      int close = v.indexOf(')', i);
+      if (close - i > 3 && "'\"".indexOf(v.charAt(i + 1)) >= 0
+          && "'\"".indexOf(v.charAt(close - 1)) >= 0) {
+        b.append(v, last, i + 1).append(v, i + 2, close - 1);
+        last = close;
+        i = v.indexOf('(', close);
+      } else {
+        i = v.indexOf('(', i + 1);
+      }
+    }
+    return b.append(v, last, v.length()).toString();
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.builders;
+
+import java.util.AbstractList;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArrayMixed;
+import com.google.gwt.query.client.Properties;
+
+/**
+ * List view of an array property of a JsonBuilder, used by the generated
+ * getters of List properties.
+ *
+ * Nothing is copied: elements are read from the js array when they are
+ * accessed and changes are written back to it. When the elements are
+ * JsonBuilders they are wrapped on first access and the wrapper is reused.
+ */
+public abstract class JsonBuilderList<T> extends AbstractList<T> {
+
+  private final Properties p;
+  private final String name;
+  private final boolean wrap;
+  private JsArrayMixed a;
+  private Object[] wrappers;
+
+  protected JsonBuilderList(Properties p, String name, boolean wrap) {
+    this.p = p;
+    this.name = name;
+    this.wrap = wrap;
+  }
+
+  public void add(int index, T element) {
+    if (index < 0 || index > size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+    JsArrayMixed r = array(true);
+    splice(r, index, 0);
+    write(r, index, element);
+    wrappers = null;
+    modCount++;
+  }
+
+  /**
+   * Return the properties where the array is read from.
+   */
+  public Properties getProperties() {
+    return p;
+  }
+
+  @SuppressWarnings("unchecked")
+  public T get(int index) {
+    JsArrayMixed r = array(false);
+    check(r, index);
+    if (!wrap) {
+      return read(r, index);
+    }
+    if (wrappers == null) {
+      wrappers = new Object[r.length()];
+    }
+    if (index >= wrappers.length || wrappers[index] == null) {
+      T w = read(r, index);
+      if (index < wrappers.length) {
+        wrappers[index] = w;
+      }
+      return w;
+    }
+    return (T) wrappers[index];
+  }
+
+  public T remove(int index) {
+    T ret = get(index);
+    splice(array(false), index, 1);
+    wrappers = null;
+    modCount++;
+    return ret;
+  }
+
+  public T set(int index, T element) {
+    T ret = get(index);
+    write(array(false), index, element);
+    if (wrappers != null && index < wrappers.length) {
+      wrappers[index] = element;
+    }
+    return ret;
+  }
+
+  public int size() {
+    JsArrayMixed r = array(false);
+    return r == null ? 0 : r.length();
+  }
+
+  /**
+   * Read the element at the index of the js array.
+   */
+  protected abstract T read(JsArrayMixed a, int i);
+
+  /**
+   * Write the element at the index of the js array.
+   */
+  protected abstract void write(JsArrayMixed a, int i, T v);
+
+  protected static native void setNull(JsArrayMixed a, int i) /*-{
+    a[i] = null;
+  }-*/;
+
+  // Return the current array of the property, the wrappers are discarded
+  // when it has been replaced.
+  private JsArrayMixed array(boolean create) {
+    JsArrayMixed r = p.getArray(name);
+    if (r == null && create) {
+      r = JavaScriptObject.createArray().cast();
+      p.set(name, r);
+    }
+    if (r != a) {
+      a = r;
+      wrappers = null;
+    }
+    return r;
+  }
+
+  private void check(JsArrayMixed r, int index) {
+    int l = r == null ? 0 : r.length();
+    if (index < 0 || index >= l) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + l);
+    }
+  }
+
+  private static native void splice(JsArrayMixed a, int i, int n) /*-{
+    if (n) a.splice(i, n); else a.splice(i, 0, null);
+  }-*/;
+}
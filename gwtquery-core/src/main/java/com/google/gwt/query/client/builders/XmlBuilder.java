@@ -35,6 +35,10 @@ public interface XmlBuilder {
 
   /**
    * Returns the documentElement.
+   *
+   * Child elements are cached by the getters of the builder, if their
+   * structure is modified directly call <code>load(getRootElement())</code>
+   * so as they are looked up again.
    */
   Element getRootElement();
 
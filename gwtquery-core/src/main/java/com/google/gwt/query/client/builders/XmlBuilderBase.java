@@ -17,11 +17,15 @@ package com.google.gwt.query.client.builders;
 
 import static com.google.gwt.query.client.GQuery.$;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.JsDate;
 import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
 import com.google.gwt.query.client.GQuery;
 import com.google.gwt.query.client.Properties;
 import com.google.gwt.query.client.js.JsUtils;
@@ -31,12 +35,18 @@ public abstract class XmlBuilderBase<J extends XmlBuilderBase<?>> implements Xml
   //TODO empty document
   protected GQuery g = $((Element)JsUtils.parseXML("<root/>"));
 
+  // Child elements already looked up, by name. They are discarded by every
+  // method of the builder which changes the children of the root element.
+  private Map<String, Element[]> children;
+
   public void append(String xml) {
     g.append(JsUtils.parseXML(xml));
+    children = null;
   }
 
   public void append(XmlBuilder x) {
     g.append(x.getRootElement());
+    children = null;
   }
 
   protected Boolean getBooleanBase(String n) {
@@ -44,11 +54,35 @@ public abstract class XmlBuilderBase<J extends XmlBuilderBase<?>> implements Xml
   }
 
   protected Element getElementBase(String n) {
-    return g.children(n).get(0);
-  }
-
+    Element[] r = getElementsBase(n);
+    return r.length == 0 ? null : r[0];
+  }
+
+  /**
+   * Return the child elements with the tag name, the array is shared by
+   * successive calls so it must not be modified.
+   *
+   * The result is remembered until the children are changed through the
+   * builder, changes made directly to the DOM of the root element are not seen
+   * until it is loaded again with <code>load(getRootElement())</code>.
+   */
   protected Element[] getElementsBase(String n) {
-    return g.children(n).elements();
+    Element e = getRootElement();
+    if (children == null) {
+      children = new HashMap<String, Element[]>();
+    }
+    Element[] r = children.get(n);
+    if (r == null) {
+      ArrayList<Element> a = new ArrayList<Element>();
+      for (Node c = e.getFirstChild(); c != null; c = c.getNextSibling()) {
+        if (c.getNodeType() == Node.ELEMENT_NODE && isTag(c.getNodeName(), n)) {
+          a.add(c.<Element>cast());
+        }
+      }
+      r = a.toArray(new Element[a.size()]);
+      children.put(n, r);
+    }
+    return r;
   }
 
   protected float getFloatBase(String s) {
@@ -66,7 +100,7 @@ public abstract class XmlBuilderBase<J extends XmlBuilderBase<?>> implements Xml
   }
 
   protected String getStrBase(String n) {
-    return g.attr(n);
+    return getRootElement().getAttribute(n);
   }
 
   public String getText() {
@@ -106,6 +140,7 @@ public abstract class XmlBuilderBase<J extends XmlBuilderBase<?>> implements Xml
     if (o != null) {
       g=$((Element)o);
     }
+    children = null;
     return (J)this;
   }
 
@@ -129,10 +164,19 @@ public abstract class XmlBuilderBase<J extends XmlBuilderBase<?>> implements Xml
   @SuppressWarnings("unchecked")
   public <T> T setText(String t) {
     g.text(t);
+    children = null;
     return (T)this;
   }
 
   public String toString() {
     return g.toString();
   }
+
+  // Compare the tag name ignoring the namespace prefix, like the selector
+  // engine does with xml documents.
+  private static boolean isTag(String nodeName, String n) {
+    int l = nodeName.length() - n.length();
+    return l == 0 ? nodeName.equals(n)
+        : l > 0 && nodeName.charAt(l - 1) == ':' && nodeName.endsWith(n);
+  }
 }
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.builders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull reader for large xml documents, it walks the string returning one
+ * event per call to {@link #next()} without building a DOM.
+ *
+ * Builders can be filled with the elements of a feed one at a time, only the
+ * element being read is parsed into a DOM:
+ *
+ * <pre>
+ *   XmlPullReader r = new XmlPullReader(xml);
+ *   Entry e = GWT.create(Entry.class);
+ *   while (r.nextElement("entry", e)) {
+ *     ...
+ *   }
+ * </pre>
+ *
+ * Comments, processing instructions and doctype declarations are skipped.
+ * The reader does not validate the document.
+ */
+public class XmlPullReader {
+
+  public static final int START_TAG = 1;
+  public static final int END_TAG = 2;
+  public static final int TEXT = 3;
+  public static final int END_DOCUMENT = 4;
+
+  private final String s;
+  private final int end;
+  private int pos, event, depth, tagStart;
+  private boolean empty;
+  private String name, text;
+  private final List<String> attrs = new ArrayList<String>();
+  // Namespace declarations in scope, and the depth of the element declaring them
+  private final List<String> ns = new ArrayList<String>();
+  private final List<Integer> nsDepth = new ArrayList<Integer>();
+
+  public XmlPullReader(String xml) {
+    s = xml;
+    end = xml.length();
+  }
+
+  /**
+   * Return the value of an attribute of the current start tag, or null when
+   * it is not present.
+   */
+  public String getAttribute(String n) {
+    for (int i = 0, l = attrs.size(); i < l; i += 2) {
+      if (attrs.get(i).equals(n)) {
+        return attrs.get(i + 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Return the number of attributes of the current start tag.
+   */
+  public int getAttributeCount() {
+    return attrs.size() / 2;
+  }
+
+  public String getAttributeName(int i) {
+    return attrs.get(i * 2);
+  }
+
+  public String getAttributeValue(int i) {
+    return attrs.get(i * 2 + 1);
+  }
+
+  /**
+   * Return the depth of the current element, the root element has depth 1
+   * both in its start and its end tags.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  public int getEvent() {
+    return event;
+  }
+
+  /**
+   * Return the tag name of the current start or end tag.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Return the content of the current text, with the entities resolved.
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Read the next event.
+   */
+  public int next() {
+    if (event == END_TAG) {
+      depth--;
+    }
+    if (empty) {
+      empty = false;
+      return event = END_TAG;
+    }
+    attrs.clear();
+    text = null;
+    while (pos < end) {
+      if (s.charAt(pos) != '<') {
+        int e = s.indexOf('<', pos);
+        e = e < 0 ? end : e;
+        text = decode(s, pos, e);
+        pos = e;
+        return event = TEXT;
+      }
+      if (s.startsWith("<!--", pos)) {
+        pos = skip("-->", pos + 4);
+      } else if (s.startsWith("<![CDATA[", pos)) {
+        int e = s.indexOf("]]>", pos + 9);
+        e = e < 0 ? end : e;
+        text = s.substring(pos + 9, e);
+        pos = Math.min(e + 3, end);
+        return event = TEXT;
+      } else if (s.startsWith("<?", pos)) {
+        pos = skip("?>", pos + 2);
+      } else if (s.startsWith("<!", pos)) {
+        // doctype, the internal subset can contain '>'
+        int b = s.indexOf('[', pos), e = s.indexOf('>', pos);
+        pos = b >= 0 && b < e ? skip("]", b) : pos;
+        pos = skip(">", pos);
+      } else if (s.startsWith("</", pos)) {
+        int e = s.indexOf('>', pos);
+        e = e < 0 ? end : e;
+        name = s.substring(pos + 2, e).trim();
+        pos = Math.min(e + 1, end);
+        return event = END_TAG;
+      } else {
+        startTag();
+        return event = START_TAG;
+      }
+    }
+    name = null;
+    return event = END_DOCUMENT;
+  }
+
+  /**
+   * Advance to the next start tag with the given name, or any start tag when
+   * the name is null, and load that element in the builder. Return false
+   * when the end of the document is reached.
+   */
+  public boolean nextElement(String n, XmlBuilder b) {
+    while (next() != END_DOCUMENT) {
+      if (event == START_TAG && (n == null || n.equals(name))) {
+        b.parse(readElement());
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Skip the current element, which must be a start tag, and return its
+   * markup. Namespaces declared by the ancestors are added to it, so it can
+   * be parsed as a document.
+   */
+  public String readElement() {
+    assert event == START_TAG : "readElement must be called at a start tag";
+    int start = tagStart, d = depth;
+    String decl = "";
+    List<String> seen = new ArrayList<String>();
+    for (int i = ns.size() - 1; i >= 0; i--) {
+      String p = ns.get(i), n = p.substring(0, p.indexOf('='));
+      if (nsDepth.get(i) < d && getAttribute(n) == null && !seen.contains(n)) {
+        decl += " " + p;
+      }
+      seen.add(n);
+    }
+    int nameEnd = start + 1 + name.length();
+    while (next() != END_DOCUMENT && (event != END_TAG || depth > d)) {
+    }
+    return decl.isEmpty() ? s.substring(start, pos)
+        : s.substring(start, nameEnd) + decl + s.substring(nameEnd, pos);
+  }
+
+  private void startTag() {
+    tagStart = pos++;
+    int e = pos;
+    while (e < end && !isSpace(s.charAt(e)) && s.charAt(e) != '>' && s.charAt(e) != '/') {
+      e++;
+    }
+    name = s.substring(pos, e);
+    pos = e;
+    depth++;
+    while (nsDepth.size() > 0 && nsDepth.get(nsDepth.size() - 1) >= depth) {
+      ns.remove(ns.size() - 1);
+      nsDepth.remove(nsDepth.size() - 1);
+    }
+    while (pos < end) {
+      char c = s.charAt(pos);
+      if (c == '>') {
+        pos++;
+        break;
+      } else if (c == '/') {
+        empty = true;
+        pos++;
+      } else if (isSpace(c)) {
+        pos++;
+      } else {
+        attribute();
+      }
+    }
+  }
+
+  private void attribute() {
+    int e = pos;
+    while (e < end && "=>/".indexOf(s.charAt(e)) < 0 && !isSpace(s.charAt(e))) {
+      e++;
+    }
+    String n = s.substring(pos, e);
+    while (e < end && isSpace(s.charAt(e))) {
+      e++;
+    }
+    String v = "";
+    if (e < end && s.charAt(e) == '=') {
+      e++;
+      while (e < end && isSpace(s.charAt(e))) {
+        e++;
+      }
+      char q = e < end ? s.charAt(e) : 0;
+      if (q == '"' || q == '\'') {
+        int c = s.indexOf(q, e + 1);
+        c = c < 0 ? end : c;
+        v = decode(s, e + 1, c);
+        e = Math.min(c + 1, end);
+      }
+    }
+    attrs.add(n);
+    attrs.add(v);
+    if (n.equals("xmlns") || n.startsWith("xmlns:")) {
+      ns.add(n + "=\"" + v.replace("&", "&amp;").replace("\"", "&quot;") + "\"");
+      nsDepth.add(depth);
+    }
+    pos = Math.max(e, pos + 1);
+  }
+
+  private int skip(String token, int from) {
+    int e = s.indexOf(token, from);
+    return e < 0 ? end : e + token.length();
+  }
+
+  /**
+   * Resolve the predefined and the numeric entities of a fragment.
+   */
+  static String decode(String s, int from, int to) {
+    int a = s.indexOf('&', from);
+    if (a < 0 || a >= to) {
+      return s.substring(from, to);
+    }
+    StringBuilder b = new StringBuilder(to - from);
+    int last = from;
+    while (a >= 0 && a < to) {
+      int e = s.indexOf(';', a);
+      if (e < 0 || e > to) {
+        break;
+      }
+      String ent = s.substring(a + 1, e);
+      String r = ent.equals("lt") ? "<" : ent.equals("gt") ? ">" : ent.equals("amp") ? "&"
+          : ent.equals("quot") ? "\"" : ent.equals("apos") ? "'" : null;
+      if (r == null && ent.startsWith("#") && ent.length() > 1) {
+        try {
+          int c = ent.charAt(1) == 'x' ? Integer.parseInt(ent.substring(2), 16)
+              : Integer.parseInt(ent.substring(1));
+          r = c < 0x10000 ? String.valueOf((char) c) : new String(new char[] {
+              (char) (0xD7C0 + (c >> 10)), (char) (0xDC00 + (c & 0x3FF))});
+        } catch (NumberFormatException ignore) {
+        }
+      }
+      if (r != null) {
+        b.append(s, last, a).append(r);
+        last = e + 1;
+      }
+      a = s.indexOf('&', a + 1);
+    }
+    return b.append(s, last, to).toString();
+  }
+
+  private static boolean isSpace(char c) {
+    return c <= ' ';
+  }
+}
@@ -145,6 +145,19 @@ public class DocumentStyleImpl {
     return JsUtils.camelize(name);
   }
 
+  /**
+   * Return the name of a property in the style object of elements.
+   */
+  public String getStylePropertyName(String prop) {
+    prop = fixPropertyName(prop);
+    // put it in lower-case only when all letters are upper-case, to avoid
+    // modifying already camelized properties
+    if (prop.matches("^[A-Z]+$")) {
+      prop = prop.toLowerCase();
+    }
+    return JsUtils.camelize(prop);
+  }
+
   public int getVisibleSize(Element e, String name) {
     int ret;
     if (!isVisible(e)) {
@@ -233,13 +246,7 @@ public class DocumentStyleImpl {
     if (e == null || prop == null) {
       return;
     }
-    prop = fixPropertyName(prop);
-    // put it in lower-case only when all letters are upper-case, to avoid
-    // modifying already camelized properties
-    if (prop.matches("^[A-Z]+$")) {
-      prop = prop.toLowerCase();
-    }
-    prop = JsUtils.camelize(prop);
+    prop = getStylePropertyName(prop);
     if (val == null || val.trim().length() == 0) {
       removeStyleProperty(e, prop);
     } else {
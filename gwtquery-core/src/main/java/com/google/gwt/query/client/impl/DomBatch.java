@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.impl;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import com.google.gwt.query.client.Function;
+import com.google.gwt.query.client.js.JsObjectArray;
+
+/**
+ * Queue of DOM reads and writes used by batched GQuery objects.
+ *
+ * Queued functions are run at the next animation frame or when flush is
+ * called: first all the reads and then all the writes, so as the browser
+ * computes the layout once per pass instead of once per element.
+ */
+public class DomBatch {
+
+  private static JsObjectArray<Function> reads = JsObjectArray.create();
+  private static JsObjectArray<Function> writes = JsObjectArray.create();
+
+  // true when there are writes which the browser has not laid out yet
+  private static boolean dirty = false;
+  private static boolean scheduled = false;
+  private static boolean flushing = false;
+
+  private static int avoidedReflows = 0;
+  private static int flushes = 0;
+
+  private static final AnimationCallback callback = new AnimationCallback() {
+    public void execute(double timestamp) {
+      scheduled = false;
+      flush();
+    }
+  };
+
+  /**
+   * Run now all the queued functions, reads first.
+   */
+  public static void flush() {
+    if (flushing) {
+      return;
+    }
+    flushing = true;
+    try {
+      // reads could queue writes, and writes could queue more reads
+      while (reads.length() > 0 || writes.length() > 0) {
+        JsObjectArray<Function> queue = reads;
+        reads = JsObjectArray.create();
+        run(queue);
+        queue = writes;
+        writes = JsObjectArray.create();
+        run(queue);
+      }
+    } finally {
+      flushing = false;
+      dirty = false;
+    }
+    flushes ++;
+  }
+
+  /**
+   * Return the number of layout computations which would have been forced
+   * because of reading a layout property just after a style change.
+   */
+  public static int getAvoidedReflows() {
+    return avoidedReflows;
+  }
+
+  /**
+   * Return the number of times the queue has been flushed.
+   */
+  public static int getFlushes() {
+    return flushes;
+  }
+
+  /**
+   * Return the number of functions waiting in the queue.
+   */
+  public static int getPending() {
+    return reads.length() + writes.length();
+  }
+
+  /**
+   * Notify that a layout property has been read synchronously while there
+   * could be writes waiting in the queue.
+   */
+  public static void onRead() {
+    if (dirty && !flushing) {
+      avoidedReflows ++;
+      dirty = false;
+    }
+  }
+
+  /**
+   * Queue a function which reads layout properties.
+   */
+  public static void read(Function f) {
+    onRead();
+    reads.add(f);
+    schedule();
+  }
+
+  public static void resetStats() {
+    avoidedReflows = flushes = 0;
+  }
+
+  /**
+   * Queue a function which modifies the DOM.
+   */
+  public static void write(Function f) {
+    dirty = true;
+    writes.add(f);
+    schedule();
+  }
+
+  private static void run(JsObjectArray<Function> queue) {
+    for (int i = 0, l = queue.length(); i < l; i++) {
+      queue.get(i).f();
+    }
+  }
+
+  private static void schedule() {
+    if (!scheduled && !flushing) {
+      scheduled = true;
+      AnimationScheduler.get().requestAnimationFrame(callback);
+    }
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.impl;
+
+import static com.google.gwt.query.client.GQuery.$;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
+import com.google.gwt.query.client.Function;
+import com.google.gwt.query.client.GQuery;
+import com.google.gwt.query.client.js.JsNodeArray;
+import com.google.gwt.query.client.js.JsRegexp;
+import com.google.gwt.query.client.js.JsUtils;
+
+/**
+ * Parse and insert large html snippets in chunks, so as the browser is not
+ * blocked while building the DOM.
+ *
+ * The html is split at the boundaries of its top level nodes, elements bigger
+ * than a chunk are inserted empty and their content is split as well. Jobs
+ * are run in order, so consecutive calls insert the html in order too.
+ *
+ * <pre>
+ *   new HtmlChunker().setChunkSize(8 * 1024).append($("#list"), html, null);
+ * </pre>
+ */
+public class HtmlChunker {
+
+  /**
+   * Approximate number of characters of html parsed at once.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+  /**
+   * Milliseconds spent inserting chunks before giving the control back to the
+   * browser.
+   */
+  public static final int DEFAULT_TIME_SLICE = 10;
+
+  private static final JsRegexp tagNameRegex = new JsRegexp("<([\\w:]+)");
+  private static final JsRegexp voidTags = new JsRegexp(
+      "^(area|base|br|col|embed|hr|img|input|keygen|link|meta|param|source|track|wbr)$", "i");
+  private static final JsRegexp rawTags = new JsRegexp("^(script|style|textarea|title)$", "i");
+
+  private static List<Job> jobs = new ArrayList<Job>();
+  private static boolean running = false;
+
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+  private int timeSlice = DEFAULT_TIME_SLICE;
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Set the approximate number of characters of html parsed at once.
+   */
+  public HtmlChunker setChunkSize(int chunkSize) {
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  public int getTimeSlice() {
+    return timeSlice;
+  }
+
+  /**
+   * Set the milliseconds spent inserting chunks in each scheduler iteration.
+   */
+  public HtmlChunker setTimeSlice(int millis) {
+    this.timeSlice = millis;
+    return this;
+  }
+
+  /**
+   * Append the html to the inside of every element in target. The onComplete
+   * function, which could be null, is run for each element once all the
+   * content has been inserted.
+   */
+  public HtmlChunker append(GQuery target, String html, Function onComplete) {
+    run(new Job(this, target, html, false, onComplete));
+    return this;
+  }
+
+  /**
+   * Like {@link #append(GQuery, String, Function)} but the content of the
+   * elements is removed before inserting the first chunk.
+   */
+  public HtmlChunker html(GQuery target, String html, Function onComplete) {
+    run(new Job(this, target, html, true, onComplete));
+    return this;
+  }
+
+  private static void run(Job job) {
+    jobs.add(job);
+    if (!running) {
+      running = true;
+      Scheduler.get().scheduleFixedDelay(jobs.get(0), 0);
+    }
+  }
+
+  private static class Job implements RepeatingCommand {
+    private final String html;
+    private final GQuery target;
+    private final boolean clear;
+    private final Function onComplete;
+    // settings of the chunker when the job was queued
+    private final int chunkSize;
+    private final int timeSlice;
+    // ranges of the html pending to insert, and the elements where they go
+    private final List<int[]> ranges = new ArrayList<int[]>();
+    private final List<JsNodeArray> parents = new ArrayList<JsNodeArray>();
+    // start tag end and close tag start of the last element scanned
+    private int openEnd, closeStart;
+    private boolean started = false;
+
+    Job(HtmlChunker chunker, GQuery target, String html, boolean clear, Function onComplete) {
+      this.chunkSize = chunker.chunkSize;
+      this.timeSlice = chunker.timeSlice;
+      this.target = target;
+      this.html = html;
+      this.clear = clear;
+      this.onComplete = onComplete;
+    }
+
+    public boolean execute() {
+      boolean more = false;
+      try {
+        more = process();
+      } finally {
+        if (!more) {
+          jobs.remove(0);
+          if (jobs.isEmpty()) {
+            running = false;
+          } else {
+            Scheduler.get().scheduleFixedDelay(jobs.get(0), 0);
+          }
+        }
+      }
+      return more;
+    }
+
+    private boolean process() {
+      if (!started) {
+        started = true;
+        start();
+      }
+      Duration d = new Duration();
+      while (!ranges.isEmpty()) {
+        int last = ranges.size() - 1;
+        int[] r = ranges.get(last);
+        if (r[0] >= r[1]) {
+          ranges.remove(last);
+          parents.remove(last);
+        } else {
+          step(r, parents.get(last));
+          if (d.elapsedMillis() >= timeSlice) {
+            return true;
+          }
+        }
+      }
+      if (onComplete != null) {
+        target.each(onComplete);
+      }
+      return false;
+    }
+
+    private void start() {
+      JsNodeArray p = JsNodeArray.create();
+      for (Element e : target.elements()) {
+        if (e.getNodeType() == Node.DOCUMENT_NODE) {
+          e = e.<Document> cast().getBody();
+        }
+        if (clear) {
+          e.setInnerHTML("");
+        }
+        p.addNode(e);
+      }
+      ranges.add(new int[]{0, html.length()});
+      parents.add(p);
+    }
+
+    /**
+     * Insert the next chunk of the range, or the empty shell of an element
+     * which is bigger than a chunk.
+     */
+    private void step(int[] r, JsNodeArray p) {
+      int start = r[0], pos = start;
+      while (pos < r[1] && pos - start < chunkSize) {
+        int next = nodeEnd(pos, r[1]);
+        if (next - pos > chunkSize && closeStart > openEnd) {
+          if (pos == start) {
+            JsNodeArray shells = insert(html.substring(pos, openEnd)
+                + html.substring(closeStart, next), p);
+            r[0] = next;
+            ranges.add(new int[]{openEnd, closeStart});
+            parents.add(shells);
+            return;
+          }
+          break;
+        }
+        pos = next;
+      }
+      insert(html.substring(start, pos), p);
+      r[0] = pos;
+    }
+
+    private JsNodeArray insert(String chunk, JsNodeArray p) {
+      JsNodeArray ret = JsNodeArray.create();
+      if (p.size() == 0 || chunk.trim().isEmpty()) {
+        return ret;
+      }
+      Document doc = JsUtils.getOwnerDocument(p.getNode(0));
+      GQuery g;
+      if (chunk.trim().startsWith("<") && tagNameRegex.test(chunk)) {
+        // wraps table rows, options, etc. like any other html snippet
+        g = $(chunk, doc);
+      } else {
+        Element div = doc.createDivElement();
+        div.setInnerHTML(chunk);
+        g = $(div.getChildNodes()).detach();
+      }
+      for (int i = 0, l = p.size(); i < l; i++) {
+        for (int j = 0, s = g.size(); j < s; j++) {
+          Node n = i == 0 ? g.get(j) : g.get(j).cloneNode(true);
+          ret.addNode(p.getNode(i).appendChild(n));
+        }
+      }
+      return ret;
+    }
+
+    /**
+     * Return the position after the top level node starting at pos. When the
+     * node is an element with content, openEnd and closeStart are set to the
+     * boundaries of its content, otherwise closeStart is set to -1.
+     */
+    private int nodeEnd(int pos, int end) {
+      closeStart = -1;
+      if (html.charAt(pos) != '<') {
+        int i = html.indexOf('<', pos);
+        return i < 0 || i > end ? end : i;
+      }
+      if (html.startsWith("<!--", pos)) {
+        return skip(html.indexOf("-->", pos), 3, end);
+      }
+      String tag = tagName(pos + 1);
+      if (tag.isEmpty() || html.charAt(pos + 1) == '/') {
+        // doctype, processing instructions and stray closing tags
+        return skip(html.indexOf('>', pos), 1, end);
+      }
+      int i = tagEnd(pos, end);
+      if (i >= end || html.charAt(i - 2) == '/' || voidTags.test(tag)) {
+        return i;
+      }
+      if (rawTags.test(tag)) {
+        return rawEnd(tag, i, end);
+      }
+      openEnd = i;
+      int depth = 1;
+      while (i < end) {
+        int lt = html.indexOf('<', i);
+        if (lt < 0 || lt >= end) {
+          break;
+        }
+        if (html.startsWith("<!--", lt)) {
+          i = skip(html.indexOf("-->", lt), 3, end);
+          continue;
+        }
+        String t = tagName(lt + 1);
+        if (t.isEmpty()) {
+          i = lt + 1;
+        } else if (html.charAt(lt + 1) == '/') {
+          i = skip(html.indexOf('>', lt), 1, end);
+          if (--depth == 0) {
+            closeStart = t.equalsIgnoreCase(tag) ? lt : -1;
+            return i;
+          }
+        } else {
+          i = tagEnd(lt, end);
+          if (rawTags.test(t)) {
+            i = rawEnd(t, i, end);
+          } else if (html.charAt(i - 2) != '/' && !voidTags.test(t)) {
+            depth++;
+          }
+        }
+      }
+      // not well balanced, take everything
+      return end;
+    }
+
+    // the end of the closing tag of a script, style, textarea or title element
+    private int rawEnd(String tag, int pos, int end) {
+      for (int c = html.indexOf("</", pos); c >= 0 && c < end; c = html.indexOf("</", c + 2)) {
+        if (tagName(c + 1).equalsIgnoreCase(tag)) {
+          return skip(html.indexOf('>', c), 1, end);
+        }
+      }
+      return end;
+    }
+
+    private int skip(int i, int len, int end) {
+      return i < 0 || i + len > end ? end : i + len;
+    }
+
+    // the end of the tag starting at pos, skipping quoted attribute values
+    private int tagEnd(int pos, int end) {
+      char quote = 0;
+      for (int i = pos + 1; i < end; i++) {
+        char c = html.charAt(i);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          }
+        } else if (c == '"' || c == '\'') {
+          quote = c;
+        } else if (c == '>') {
+          return i + 1;
+        }
+      }
+      return end;
+    }
+
+    private String tagName(int pos) {
+      int i = pos < html.length() && html.charAt(pos) == '/' ? pos + 1 : pos;
+      int start = i;
+      while (i < html.length()) {
+        char c = html.charAt(i);
+        if (!Character.isLetterOrDigit(c) && c != ':' && c != '-' && c != '_') {
+          break;
+        }
+        i++;
+      }
+      return html.substring(start, i);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * A bounded cache which evicts the least recently used entry when
+ * its maximum size is reached.
+ *
+ * It counts hits, misses and evictions so as callers can check
+ * at runtime how effective the cache is.
+ */
+public class LruCache<K, V> {
+
+  private int maxSize;
+  private int hits, misses, evictions;
+
+  private final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+    protected boolean removeEldestEntry(Entry<K, V> eldest) {
+      if (size() > maxSize) {
+        evictions ++;
+        return true;
+      }
+      return false;
+    }
+  };
+
+  public LruCache(int maxSize) {
+    setMaxSize(maxSize);
+  }
+
+  /**
+   * Remove all the entries in the cache, statistics are not reset.
+   */
+  public void clear() {
+    map.clear();
+  }
+
+  /**
+   * Return true if there is a value for the key, it does not modify
+   * the order of entries nor the statistics.
+   */
+  public boolean containsKey(K key) {
+    return map.containsKey(key);
+  }
+
+  /**
+   * Return the value associated with the key or null, and mark the entry
+   * as the most recently used one.
+   */
+  public V get(K key) {
+    V ret = map.get(key);
+    if (ret != null) {
+      hits ++;
+    } else {
+      misses ++;
+    }
+    return ret;
+  }
+
+  public int getEvictions() {
+    return evictions;
+  }
+
+  public int getHits() {
+    return hits;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int getMisses() {
+    return misses;
+  }
+
+  /**
+   * Store a value in the cache, evicting the least recently used entry
+   * if the cache is full. Null values are not stored.
+   */
+  public V put(K key, V value) {
+    if (value != null && maxSize > 0) {
+      map.put(key, value);
+    }
+    return value;
+  }
+
+  public V remove(K key) {
+    return map.remove(key);
+  }
+
+  /**
+   * Reset hits, misses and evictions counters.
+   */
+  public void resetStats() {
+    hits = misses = evictions = 0;
+  }
+
+  /**
+   * Change the maximum number of entries, a value of zero disables the cache.
+   */
+  public void setMaxSize(int maxSize) {
+    this.maxSize = Math.max(0, maxSize);
+    if (map.size() > this.maxSize) {
+      // keys are ordered from the least to the most recently used
+      Object[] k = map.keySet().toArray();
+      for (int i = 0, l = k.length - this.maxSize; i < l; i++) {
+        map.remove(k[i]);
+        evictions ++;
+      }
+    }
+  }
+
+  public int size() {
+    return map.size();
+  }
+
+  public String toString() {
+    return "size=" + size() + " max=" + maxSize + " hits=" + hits + " misses="
+        + misses + " evictions=" + evictions;
+  }
+}
@@ -61,6 +61,14 @@ public class SelectorEngine implements HasSelector {
       return ctx.querySelectorAll(selector);
   }-*/;
 
+  /**
+   * Run the browser native matchesSelector, it throws an exception when the
+   * selector is not supported by the browser.
+   */
+  public static native boolean matchesSelectorImpl(Element e, String selector) /*-{
+    return e[@com.google.gwt.query.client.impl.SelectorEngine::matchesSelectorName](selector);
+  }-*/;
+
   public static native NodeList<Element> elementsByTagName(String selector,
       Node ctx) /*-{
       return ctx.getElementsByTagName(selector);
@@ -99,6 +107,14 @@ public class SelectorEngine implements HasSelector {
 
   public static final boolean hasQuerySelector = hasQuerySelectorAll();
 
+  /**
+   * Name of the native matchesSelector method in this browser, null if
+   * it is not supported.
+   */
+  public static final String matchesSelectorName = getMatchesSelectorName();
+
+  public static final boolean hasMatchesSelector = matchesSelectorName != null;
+
   public SelectorEngine() {
     impl = (SelectorEngineImpl) GWT.create(SelectorEngineImpl.class);
     GWT.log("GQuery - Created SelectorEngineImpl: " + impl.getClass().getName());
@@ -114,38 +130,160 @@ public class SelectorEngine implements HasSelector {
     JsNodeArray res = JsNodeArray.create();
     for (int i = 0, l = nodes.getLength(), j = 0; i < l; i++) {
       Element e = nodes.getItem(i);
-      if (visible == ((e.getOffsetWidth() + e.getOffsetHeight()) > 0 && styleImpl.isVisible(e))) {
+      if (visible == isVisible(e)) {
         res.addNode(e, j++);
       }
     }
     return res;
   }
 
+  private boolean isVisible(Element e) {
+    return (e.getOffsetWidth() + e.getOffsetHeight()) > 0 && styleImpl.isVisible(e);
+  }
+
+  /**
+   * A selector compiled by the engine, so as subsequent queries with the same
+   * expression do not need to run any regular expression.
+   */
+  static class SelectorPlan {
+    // the selector is handled by the selector engine implementation
+    static final int ENGINE = 0;
+    // nodes returned by the first part are filtered by visibility
+    static final int VISIBLE = 1;
+    static final int HIDDEN = 2;
+    // the results of all parts are concatenated
+    static final int UNION = 3;
+    // the selector is run by the browser native querySelectorAll
+    static final int NATIVE = 4;
+
+    final int type;
+    final String selector;
+    final SelectorPlan[] parts;
+    // whether the selector has positional pseudo-classes
+    boolean positional;
+
+    SelectorPlan(int type, String selector, SelectorPlan... parts) {
+      this.type = type;
+      this.selector = selector;
+      this.parts = parts;
+    }
+  }
+
+  /**
+   * Default number of compiled selectors kept by the engine, use
+   * <code>getSelectorCache().setMaxSize(..)</code> to change it.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 256;
+
+  // positional pseudo selectors, they depend on the set of matched elements
+  JsRegexp pos = new JsRegexp(":(nth|eq|gt|lt|first|last|even|odd)(?:\\((\\d*)\\))?(?=[^\\-]|$)");
+
   // pseudo selectors which are computed by gquery
   JsRegexp p = new JsRegexp("(.*):((visible|hidden)|((button|checkbox|file|hidden|image|password|radio|reset|submit|text)\\s*(,|$)))(.*)", "i");
 
+  private final LruCache<String, SelectorPlan> plans = new LruCache<String, SelectorPlan>(DEFAULT_CACHE_SIZE);
+
+  /**
+   * Return the cache of compiled selectors, useful to inspect the hits
+   * and misses counters or to change its size.
+   */
+  public LruCache<String, ?> getSelectorCache() {
+    return plans;
+  }
+
   public NodeList<Element> select(String selector, Node ctx) {
-    if (p.test(selector)) {
-      JsNodeArray res = JsNodeArray.create();
-      for (String s : selector.trim().split("\\s*,\\s*")) {
-        NodeList<Element> nodes;
-        JsObjectArray<String> a = p.match(s);
-        if (a.get(0) != null) {
-          if (s.endsWith(":visible")) {
-            nodes = filterByVisibility(select(s.substring(0, s.length() - 8), ctx), true);
-          } else if (s.endsWith(":hidden")) {
-            nodes = filterByVisibility(select(s.substring(0, s.length() - 7), ctx), false);
-          } else {
-            nodes = select((a.get(1) != null ? a.get(1) : "") + "[type=" + a.get(2) + "]", ctx);
+    return select(getPlan(selector), ctx);
+  }
+
+  /**
+   * Return true if the element matches the selector.
+   *
+   * It uses the native browser matchesSelector when it is available, otherwise
+   * the matcher of the selector engine implementation. Positional selectors
+   * (:first, :odd ...) cannot be evaluated against one element and have to be
+   * run against the whole set of elements, see {@link #isPositional(String)}.
+   */
+  public boolean matches(Element e, String selector) {
+    if (e == null || e.getNodeType() != Node.ELEMENT_NODE) {
+      return false;
+    }
+    return matches(getPlan(selector), e);
+  }
+
+  /**
+   * Return true if the selector has positional pseudo-classes
+   * like :first, :last, :even, :odd, :eq(n), :gt(n) or :lt(n).
+   */
+  public boolean isPositional(String selector) {
+    return getPlan(selector).positional;
+  }
+
+  private SelectorPlan getPlan(String selector) {
+    SelectorPlan plan = plans.get(selector);
+    if (plan == null) {
+      plan = plans.put(selector, compile(selector));
+      plan.positional = pos.test(selector);
+    }
+    return plan;
+  }
+
+  private boolean matches(SelectorPlan plan, Element e) {
+    switch (plan.type) {
+      case SelectorPlan.VISIBLE:
+        return matches(plan.parts[0], e) && isVisible(e);
+      case SelectorPlan.HIDDEN:
+        return matches(plan.parts[0], e) && !isVisible(e);
+      case SelectorPlan.UNION:
+        for (SelectorPlan part : plan.parts) {
+          if (matches(part, e)) {
+            return true;
           }
+        }
+        return false;
+      default:
+        // an empty selector is produced by expressions like ':visible'
+        return plan.selector.trim().length() == 0 || impl.matches(e, plan.selector);
+    }
+  }
+
+  SelectorPlan compile(String selector) {
+    if (!p.test(selector)) {
+      return new SelectorPlan(SelectorPlan.ENGINE, selector);
+    }
+    String[] parts = selector.trim().split("\\s*,\\s*");
+    SelectorPlan[] compiled = new SelectorPlan[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      String s = parts[i];
+      JsObjectArray<String> a = p.match(s);
+      if (a.get(0) != null) {
+        if (s.endsWith(":visible")) {
+          compiled[i] = new SelectorPlan(SelectorPlan.VISIBLE, null, compile(s.substring(0, s.length() - 8)));
+        } else if (s.endsWith(":hidden")) {
+          compiled[i] = new SelectorPlan(SelectorPlan.HIDDEN, null, compile(s.substring(0, s.length() - 7)));
         } else {
-          nodes = select(s, ctx);
+          compiled[i] = compile((a.get(1) != null ? a.get(1) : "") + "[type=" + a.get(2) + "]");
         }
-        JsUtils.copyNodeList(res, nodes, false);
+      } else {
+        compiled[i] = compile(s);
       }
-      return res.<NodeList<Element>> cast();
-    } else {
-      return impl.select(selector, ctx);
+    }
+    return new SelectorPlan(SelectorPlan.UNION, selector, compiled);
+  }
+
+  private NodeList<Element> select(SelectorPlan plan, Node ctx) {
+    switch (plan.type) {
+      case SelectorPlan.VISIBLE:
+        return filterByVisibility(select(plan.parts[0], ctx), true);
+      case SelectorPlan.HIDDEN:
+        return filterByVisibility(select(plan.parts[0], ctx), false);
+      case SelectorPlan.UNION:
+        JsNodeArray res = JsNodeArray.create();
+        for (SelectorPlan part : plan.parts) {
+          JsUtils.copyNodeList(res, select(part, ctx), false);
+        }
+        return res.<NodeList<Element>> cast();
+      default:
+        return impl.select(plan.selector, ctx);
     }
   }
 
@@ -175,6 +313,16 @@ public class SelectorEngine implements HasSelector {
            /native/.test(String($doc.querySelectorAll)) ? true : false;
   }-*/;
 
+  private static native String getMatchesSelectorName() /*-{
+    if ($doc.location.href.indexOf("_force_no_native") >= 0) return null;
+    var e = $doc.documentElement, n = ['matches', 'webkitMatchesSelector',
+        'mozMatchesSelector', 'msMatchesSelector', 'oMatchesSelector'];
+    for (var i = 0; i < n.length; i++) {
+      if (e[n[i]]) return n[i];
+    }
+    return null;
+  }-*/;
+
   public static native boolean hasXpathEvaluate() /*-{
     return $doc.evaluate ? true : false;
   }-*/;
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.impl;
+
+import com.google.gwt.dom.client.Node;
+import com.google.gwt.query.client.js.JsNodeArray;
+
+/**
+ * Base class for the selectors compiled by SelectorGeneratorJSOptimal.
+ *
+ * Generated methods call these helpers in sequence, each one takes the
+ * set of nodes matched so far and returns a new set, so there is no need
+ * to parse the selector at runtime.
+ *
+ * Traversal helpers receive the tag name, using '*' for any element. Filter
+ * helpers receive a last parameter which is false when the filter is
+ * negated with :not().
+ */
+public class SelectorEngineCompiled extends SelectorEngine {
+
+  /**
+   * Return the elements matching the tag which are descendant of any of the
+   * nodes. Nodes contained in the previous one are skipped, so the result
+   * does not have duplicates when nodes are in document order.
+   */
+  protected static native JsNodeArray descendants(JsNodeArray n, String tag) /*-{
+    var r = [], last = null;
+    for (var i = 0, l = n.length; i < l; i++) {
+      var c = n[i];
+      if (last && @com.google.gwt.query.client.impl.SelectorEngineCompiled::contains(Lcom/google/gwt/dom/client/Node;Lcom/google/gwt/dom/client/Node;)(last, c)) {
+        continue;
+      }
+      last = c;
+      var e = c.getElementsByTagName(tag);
+      for (var j = 0, m = e.length; j < m; j++) {
+        // old IE returns comments with '*'
+        if (e[j].nodeType == 1) r.push(e[j]);
+      }
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Return the element with the given id when it is a descendant of any of
+   * the nodes and it matches the tag.
+   */
+  protected static native JsNodeArray descendantsById(JsNodeArray n, String id, String tag) /*-{
+    var r = [], last = null;
+    for (var i = 0, l = n.length; i < l; i++) {
+      var c = n[i];
+      if (last && @com.google.gwt.query.client.impl.SelectorEngineCompiled::contains(Lcom/google/gwt/dom/client/Node;Lcom/google/gwt/dom/client/Node;)(last, c)) {
+        continue;
+      }
+      last = c;
+      var d = c.nodeType == 9 ? c : c.ownerDocument;
+      var e = d && d.getElementById ? d.getElementById(id) : null;
+      if (e && e.id == id) {
+        if (c != d && !@com.google.gwt.query.client.impl.SelectorEngineCompiled::contains(Lcom/google/gwt/dom/client/Node;Lcom/google/gwt/dom/client/Node;)(c, e)) {
+          continue;
+        }
+      } else {
+        // not attached nodes, xml documents, and IE which looks up names too
+        e = null;
+        var a = c.getElementsByTagName(tag);
+        for (var j = 0, m = a.length; j < m; j++) {
+          if (a[j].nodeType == 1 && a[j].getAttribute("id") == id) {
+            e = a[j];
+            break;
+          }
+        }
+      }
+      if (e && (tag == "*" || e.nodeName.toLowerCase() == tag.toLowerCase())) {
+        r.push(e);
+      }
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Return the elements having the class which are descendant of any of the
+   * nodes, using getElementsByClassName when the browser supports it.
+   */
+  protected static native JsNodeArray descendantsByClass(JsNodeArray n, String clazz) /*-{
+    var r = [], last = null;
+    for (var i = 0, l = n.length; i < l; i++) {
+      var c = n[i];
+      if (last && @com.google.gwt.query.client.impl.SelectorEngineCompiled::contains(Lcom/google/gwt/dom/client/Node;Lcom/google/gwt/dom/client/Node;)(last, c)) {
+        continue;
+      }
+      last = c;
+      if (c.getElementsByClassName) {
+        var e = c.getElementsByClassName(clazz);
+        for (var j = 0, m = e.length; j < m; j++) {
+          r.push(e[j]);
+        }
+      } else {
+        var e = c.getElementsByTagName("*"), s = " " + clazz + " ";
+        for (var j = 0, m = e.length; j < m; j++) {
+          if (e[j].nodeType == 1 && (" " + e[j].className + " ").replace(/[\t\r\n\f]/g, " ").indexOf(s) >= 0) {
+            r.push(e[j]);
+          }
+        }
+      }
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Return the children of the nodes which match the tag.
+   */
+  protected static native JsNodeArray children(JsNodeArray n, String tag) /*-{
+    var r = [], t = tag.toLowerCase();
+    for (var i = 0, l = n.length; i < l; i++) {
+      for (var e = n[i].firstChild; e; e = e.nextSibling) {
+        if (e.nodeType == 1 && (t == "*" || e.nodeName.toLowerCase() == t)) {
+          r.push(e);
+        }
+      }
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Return the next element sibling of each node when it matches the tag.
+   */
+  protected static native JsNodeArray adjacent(JsNodeArray n, String tag) /*-{
+    var r = [], t = tag.toLowerCase();
+    for (var i = 0, l = n.length; i < l; i++) {
+      var e = n[i].nextSibling;
+      while (e && e.nodeType != 1) {
+        e = e.nextSibling;
+      }
+      if (e && (t == "*" || e.nodeName.toLowerCase() == t)) {
+        r.push(e);
+      }
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Return all the following siblings of the nodes which match the tag.
+   */
+  protected static native JsNodeArray siblings(JsNodeArray n, String tag) /*-{
+    var r = [], v = [], t = tag.toLowerCase();
+    for (var i = 0, l = n.length; i < l; i++) {
+      for (var e = n[i].nextSibling; e; e = e.nextSibling) {
+        if (e.nodeType == 1) {
+          // the rest of siblings were visited from a previous node
+          if (e.__gqsib) break;
+          e.__gqsib = true;
+          v.push(e);
+          if (t == "*" || e.nodeName.toLowerCase() == t) {
+            r.push(e);
+          }
+        }
+      }
+    }
+    @com.google.gwt.query.client.impl.SelectorEngineCompiled::unmark(Lcom/google/gwt/query/client/js/JsNodeArray;Ljava/lang/String;)(v, "__gqsib");
+    return r;
+  }-*/;
+
+  protected static native JsNodeArray filterId(JsNodeArray n, String id, boolean keep) /*-{
+    var r = [];
+    for (var i = 0, l = n.length; i < l; i++) {
+      if ((n[i].getAttribute("id") == id) == keep) r.push(n[i]);
+    }
+    return r;
+  }-*/;
+
+  protected static native JsNodeArray filterTag(JsNodeArray n, String tag, boolean keep) /*-{
+    var r = [], t = tag.toLowerCase();
+    for (var i = 0, l = n.length; i < l; i++) {
+      if ((t == "*" || n[i].nodeName.toLowerCase() == t) == keep) r.push(n[i]);
+    }
+    return r;
+  }-*/;
+
+  protected static native JsNodeArray filterClass(JsNodeArray n, String clazz, boolean keep) /*-{
+    var r = [], s = " " + clazz + " ";
+    for (var i = 0, l = n.length; i < l; i++) {
+      var c = n[i].className;
+      // svg and xml elements
+      if (typeof c != "string") c = n[i].getAttribute("class") || "";
+      if (((" " + c + " ").replace(/[\t\r\n\f]/g, " ").indexOf(s) >= 0) == keep) r.push(n[i]);
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Filter the nodes by attribute, op is one of '', '=', '!=', '^=', '$=',
+   * '*=', '~=' or '|=', an empty op just checks that the attribute exists.
+   */
+  protected static native JsNodeArray filterAttr(JsNodeArray n, String name, String op, String val, boolean keep) /*-{
+    var r = [];
+    for (var i = 0, l = n.length; i < l; i++) {
+      var e = n[i], a = e.getAttributeNode ? e.getAttributeNode(name) : null;
+      var v = a && a.specified ? a.value : e.getAttribute(name), m;
+      if (v == null) {
+        m = op == "!=";
+      } else {
+        v = "" + v;
+        m = op == "" ? true
+          : op == "=" ? v == val
+          : op == "!=" ? v != val
+          : op == "^=" ? !!val && v.indexOf(val) == 0
+          : op == "$=" ? !!val && v.length >= val.length && v.substr(v.length - val.length) == val
+          : op == "*=" ? !!val && v.indexOf(val) >= 0
+          : op == "~=" ? (" " + v + " ").replace(/[\t\r\n\f]/g, " ").indexOf(" " + val + " ") >= 0
+          : op == "|=" ? v == val || v.indexOf(val + "-") == 0
+          : false;
+      }
+      if (m == keep) r.push(e);
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Filter the nodes by their position among their element siblings, it
+   * covers :first-child, which is a=0 b=1, and :nth-child(an+b).
+   */
+  protected static native JsNodeArray filterChild(JsNodeArray n, int a, int b, boolean keep) /*-{
+    var r = [];
+    for (var i = 0, l = n.length; i < l; i++) {
+      var p = 1;
+      for (var s = n[i].previousSibling; s; s = s.previousSibling) {
+        if (s.nodeType == 1) p++;
+      }
+      var m = a == 0 ? p == b : (p - b) % a == 0 && (p - b) / a >= 0;
+      if (m == keep) r.push(n[i]);
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Filter the nodes which are the last child of their parent, or the only
+   * one when the parameter only is true.
+   */
+  protected static native JsNodeArray filterLastChild(JsNodeArray n, boolean only, boolean keep) /*-{
+    var r = [];
+    for (var i = 0, l = n.length; i < l; i++) {
+      var s = n[i].nextSibling;
+      while (s && s.nodeType != 1) s = s.nextSibling;
+      var m = !s;
+      if (m && only) {
+        s = n[i].previousSibling;
+        while (s && s.nodeType != 1) s = s.previousSibling;
+        m = !s;
+      }
+      if (m == keep) r.push(n[i]);
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Filter the nodes without children, text included.
+   */
+  protected static native JsNodeArray filterEmpty(JsNodeArray n, boolean keep) /*-{
+    var r = [];
+    for (var i = 0, l = n.length; i < l; i++) {
+      var m = true;
+      for (var c = n[i].firstChild; c && m; c = c.nextSibling) {
+        m = c.nodeType != 1 && c.nodeType != 3 && c.nodeType != 4;
+      }
+      if (m == keep) r.push(n[i]);
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Filter the nodes which have the boolean property 'checked', 'disabled'
+   * or 'enabled'.
+   */
+  protected static native JsNodeArray filterState(JsNodeArray n, String state, boolean keep) /*-{
+    var r = [];
+    for (var i = 0, l = n.length; i < l; i++) {
+      var e = n[i];
+      var m = state == "checked" ? e.checked === true
+            : state == "disabled" ? e.disabled === true
+            : e.disabled === false && e.type != "hidden";
+      if (m == keep) r.push(e);
+    }
+    return r;
+  }-*/;
+
+  /**
+   * Remove duplicates and sort the nodes in document order.
+   */
+  protected static native JsNodeArray sortUnique(JsNodeArray n) /*-{
+    var r = [];
+    for (var i = 0, l = n.length; i < l; i++) {
+      if (!n[i].__gqsel) {
+        n[i].__gqsel = true;
+        r.push(n[i]);
+      }
+    }
+    @com.google.gwt.query.client.impl.SelectorEngineCompiled::unmark(Lcom/google/gwt/query/client/js/JsNodeArray;Ljava/lang/String;)(r, "__gqsel");
+    if (r.length > 1) {
+      r.sort(function(a, b) {
+        return a.compareDocumentPosition ? (a.compareDocumentPosition(b) & 2 ? 1 : -1)
+             : a.sourceIndex - b.sourceIndex;
+      });
+    }
+    return r;
+  }-*/;
+
+  private static native boolean contains(Node a, Node b) /*-{
+    return a.nodeType == 9 ? (b.ownerDocument || b) == a
+         : a.contains ? a != b && a.contains(b) : !!(a.compareDocumentPosition(b) & 16);
+  }-*/;
+
+  // Remove the markers used to dedupe nodes, so they are not left in the dom
+  private static native void unmark(JsNodeArray n, String name) /*-{
+    for (var i = 0, l = n.length; i < l; i++) {
+      try {
+        delete n[i][name];
+      } catch (e) {
+        // old IE does not allow deleting expandos of elements
+        n[i][name] = undefined;
+      }
+    }
+  }-*/;
+}
@@ -15,10 +15,50 @@
  */
 package com.google.gwt.query.client.impl;
 
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
+import com.google.gwt.dom.client.NodeList;
+
 /**
  * Base/Utility class for runtime selector engine implementations.
  */
 public abstract class SelectorEngineImpl implements HasSelector {
 
+  /**
+   * Return true if the element matches the selector.
+   *
+   * Implementations should override this using a faster matcher when
+   * possible, this one runs the selector in the context of the element's
+   * parent and looks for the element in the results.
+   */
+  public boolean matches(Element e, String selector) {
+    return matches(this, e, selector);
+  }
 
+  /**
+   * Check whether an element matches a selector running the selector
+   * with the given engine in the context of the element's parent.
+   */
+  protected static boolean matches(HasSelector engine, Element e, String selector) {
+    Node parent = e.getParentNode();
+    boolean ghostParent = parent == null;
+    if (ghostParent) {
+      parent = Document.get().createDivElement();
+      parent.appendChild(e);
+    }
+    try {
+      NodeList<Element> nodes = engine.select(selector, parent);
+      for (int i = 0, l = nodes.getLength(); i < l; i++) {
+        if (nodes.getItem(i) == e) {
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      if (ghostParent) {
+        parent.removeChild(e);
+      }
+    }
+  }
 }
@@ -19,7 +19,6 @@ import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.dom.client.Node;
 import com.google.gwt.dom.client.NodeList;
-import com.google.gwt.query.client.js.JsNamedArray;
 
 /**
  * Runtime selector engine implementation for browsers with native
@@ -32,7 +31,7 @@ public class SelectorEngineNative extends SelectorEngineImpl {
 
   private static HasSelector impl;
 
-  static JsNamedArray<String> cache;
+  static LruCache<String, SelectorEngine.SelectorPlan> cache;
 
   public SelectorEngineNative() {
     if (impl == null) {
@@ -41,34 +40,69 @@ public class SelectorEngineNative extends SelectorEngineImpl {
     }
   }
 
-  public NodeList<Element> select(String selector, Node ctx) {
-    // querySelectorAllImpl does not support ids starting with a digit.
-//    if (selector.matches("#[\\w\\-]+")) {
-//      return SelectorEngine.veryQuickId(selector.substring(1), ctx);
-//    } else
-    if (selector.contains("!=")) {
-      if (cache == null) {
-        cache = JsNamedArray.create();
-      }
-      String xsel = cache.get(selector);
-      if (xsel == null) {
-        xsel = selector.replaceAll("(\\[\\w+)!(=[^\\]]+\\])", ":not($1$2)");
-        cache.put(selector, xsel);
-      }
-      selector = xsel;
+  /**
+   * Return the cache of compiled selectors, useful to inspect the hits
+   * and misses counters or to change its size.
+   */
+  public static LruCache<String, ?> getSelectorCache() {
+    if (cache == null) {
+      cache = new LruCache<String, SelectorEngine.SelectorPlan>(SelectorEngine.DEFAULT_CACHE_SIZE);
     }
+    return cache;
+  }
 
-    if (!SelectorEngine.hasQuerySelector || selector.matches(NATIVE_EXCEPTIONS_REGEXP)) {
-      return impl.select(selector, ctx);
+  public NodeList<Element> select(String selector, Node ctx) {
+    SelectorEngine.SelectorPlan plan = getPlan(selector);
+    if (plan.type != SelectorEngine.SelectorPlan.NATIVE) {
+      return impl.select(plan.selector, ctx);
     } else {
       try {
-        return SelectorEngine.querySelectorAllImpl(selector, ctx);
+        return SelectorEngine.querySelectorAllImpl(plan.selector, ctx);
       } catch (Exception e) {
         System.err.println("ERROR SelectorEngineNative " + e.getMessage()
-            + " " + selector + ", falling back to "
+            + " " + plan.selector + ", falling back to "
             + impl.getClass().getName().replaceAll(".*\\.", ""));
-        return impl.select(selector, ctx);
+        // do not try the native engine again with this selector
+        cache.put(selector, new SelectorEngine.SelectorPlan(
+            SelectorEngine.SelectorPlan.ENGINE, plan.selector));
+        return impl.select(plan.selector, ctx);
+      }
+    }
+  }
+
+  public boolean matches(Element e, String selector) {
+    SelectorEngine.SelectorPlan plan = getPlan(selector);
+    if (plan.type == SelectorEngine.SelectorPlan.NATIVE && SelectorEngine.hasMatchesSelector) {
+      try {
+        return SelectorEngine.matchesSelectorImpl(e, plan.selector);
+      } catch (Exception ex) {
+        // continue with the fallback engine
       }
     }
+    return impl instanceof SelectorEngineImpl
+        ? ((SelectorEngineImpl) impl).matches(e, plan.selector)
+        : matches(impl, e, plan.selector);
+  }
+
+  private static SelectorEngine.SelectorPlan getPlan(String selector) {
+    getSelectorCache();
+    SelectorEngine.SelectorPlan plan = cache.get(selector);
+    if (plan == null) {
+      plan = cache.put(selector, compile(selector));
+    }
+    return plan;
+  }
+
+  private static SelectorEngine.SelectorPlan compile(String selector) {
+    // querySelectorAllImpl does not support ids starting with a digit.
+//    if (selector.matches("#[\\w\\-]+")) {
+//      return SelectorEngine.veryQuickId(selector.substring(1), ctx);
+//    } else
+    if (selector.contains("!=")) {
+      selector = selector.replaceAll("(\\[\\w+)!(=[^\\]]+\\])", ":not($1$2)");
+    }
+    boolean useNative = SelectorEngine.hasQuerySelector && !selector.matches(NATIVE_EXCEPTIONS_REGEXP);
+    return new SelectorEngine.SelectorPlan(useNative ? SelectorEngine.SelectorPlan.NATIVE
+        : SelectorEngine.SelectorPlan.ENGINE, selector);
   }
 }
@@ -38,4 +38,16 @@ public class SelectorEngineNativeMin extends SelectorEngineImpl {
     }
   }
 
+  public boolean matches(Element e, String selector) {
+    if (SelectorEngine.hasMatchesSelector) {
+      try {
+        return SelectorEngine.matchesSelectorImpl(e, selector);
+      } catch (Exception ex) {
+        GWT.log("GwtQuery: Selector '" + selector + "' is unsupported in this Native engine, do not use this syntax or configure your module to use JS fallback");
+        return false;
+      }
+    }
+    return super.matches(e, selector);
+  }
+
 }
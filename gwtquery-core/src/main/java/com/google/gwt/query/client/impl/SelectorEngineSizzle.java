@@ -1113,4 +1113,12 @@ $wnd.GQS = GQS;
     JsArray<Element> results = JavaScriptObject.createArray().cast();
     return select(selector, context, results, null).cast();
   }
+
+  public boolean matches(Element e, String selector) {
+    return matches0(selector, e);
+  }
+
+  private static native boolean matches0(String selector, Element e) /*-{
+    return $wnd.GQS.matches(selector, [e]).length > 0;
+  }-*/;
 }
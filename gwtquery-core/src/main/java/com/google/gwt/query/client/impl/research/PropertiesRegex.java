@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.impl.research;
+
+/**
+ * The regex chain Properties.wrapPropertiesString used before the single pass
+ * parser, kept as the reference the parser is tested and benchmarked against.
+ */
+public class PropertiesRegex {
+
+  /**
+   * Property strings which both implementations convert to the same json.
+   */
+  public static final String[] CORPUS = {
+    "", "({})", "border:'1px solid black'", "({border:'1px solid black'})",
+    "b: 'a'; c: 1, /*gg: aadf*/d: url('https://test.com');,e:null,f:false",
+    "color: 'rgb(0, 0,139)', background: red", "width: '' ; top:'' ;", "border-left: solid",
+    "[{a:1, b:{a:2,b:{a:3}},u:url, d:'2','t':['hola','adios'], 'z': true}]",
+    "$x:22.60,$y:.0,h:#y", "attr1: 'a', attr2: 'b'", "{class:'test2', disabled:true}",
+    "a: 1, b: 0.5, c: null, d: whatever, e: true, f: false",
+    "dataType: xml, type: post; data: {q: 'gwt'}, headers: {X-Powered-By: GQuery}",
+    "color: 'red', 'font-weight': 'bold', background: 'blue'", "COLOR: 'red', 'FONT-WEIGHT': 'bold'",
+    "{$width: '500', $border: '10'}", "{top:'+=500px',left:'+=500px'}", "$width: +=100; $border: +=4",
+    "{backgroundColor:'red', color:'#ffffff', borderColor:'rgb(129, 0, 70)'}", "left: '-=100'",
+    "marginTop: '-110px', marginLeft: '-110px', top: '50%', left: '50%', width: '174px', height: '174px', padding: '20px'",
+    "color: red; background: blue;", "width: 100px",
+  };
+
+  /**
+   * Convert a property string to json with the regex chain.
+   */
+  public static String wrapPropertiesString(String s) {
+    String ret = s //
+        .replaceAll("\\s*/\\*[\\s\\S]*?\\*/\\s*", "") // Remove comments
+        .replaceAll("([:\\)\\(,;}{'\"])\\s+" , "$1") // Remove spaces
+        .replaceAll("\\s+([:\\)\\(,;}{'\"])" , "$1") // Remove spaces
+        .replaceFirst("^[\\(]+(.*)[\\)]+$", "$1") // Remove ()
+        .replaceAll("\\([\"']([^\\)]+)[\"']\\)" , "($1)") // Remove quotes
+        .replaceAll("[;,]+([\\w-\\$]+):", ";$1:") // Change comma by semicolon
+        .replaceAll("([^,;])([\\]}])", "$1;$2") // Put control semicolon used below
+        .replaceAll(":\\s*[\"']?([^;\\{\\}\\[\\]\"']*)[\"']?\\s*([;,]+|$)", ":\"$1\";") // put quotes to all values (even empty)
+        .replaceAll("[;,]+([\\w-]+):", ";$1:") // Change semicolon by comma
+        .replaceAll("(^|[^\\w-\\$'])([\\w-\\$]+):(['\"\\[{])", "$1\"$2\":$3") // quote keys
+        .replaceAll("(^|[^\\w-\\$'])([\\w-\\$]+):(['\"\\[{])", "$1\"$2\":$3") // quote keys second pass
+        .replaceAll("(|[\\[\\]\\{\\},\\(])'([^']*)'", "$1\"$2\"") // Replace single-quote by double-quote
+        .replaceAll(";([^:]+):", ",$1:") // change semicolon
+        .replaceAll(";([^:]+):", ",$1:") // change semicolon second pass
+        .replaceAll(":\"(-?\\d[\\d\\.]*|null|false|true)\"[;,]", ":$1,") // numbers do not need quote
+        .replaceAll("[;,]+([\\]\\}]|$)", "$1") // remove endings
+        ;
+    ret = ret.matches("(^[\\[\\{].*[\\]\\}]$)") ? ret : "{" + ret + "}";
+    return ret;
+  }
+}
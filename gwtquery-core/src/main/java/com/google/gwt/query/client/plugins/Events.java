@@ -19,6 +19,7 @@ import com.google.gwt.dom.client.Node;
 import com.google.gwt.query.client.Function;
 import com.google.gwt.query.client.GQuery;
 import com.google.gwt.query.client.js.JsUtils;
+import com.google.gwt.query.client.plugins.events.BindOptions;
 import com.google.gwt.query.client.plugins.events.EventsListener;
 import com.google.gwt.query.client.plugins.events.EventsListener.SpecialEvent;
 import com.google.gwt.query.client.plugins.events.GqEvent;
@@ -42,6 +43,15 @@ public class Events extends GQuery {
     return JsUtils.isWindow(n) || n.getNodeType() != 3 && n.getNodeType() != 8;
   }
 
+  /**
+   * Return the listener of the live handlers: the one of the context element, or the
+   * delegation root of the document when there is no context element.
+   */
+  private EventsListener getLiveListener() {
+    return Element.is(currentContext) ? EventsListener.getInstance((Element) currentContext)
+        : EventsListener.getRootInstance();
+  }
+
   public Events(GQuery gq) {
     super(gq);
   }
@@ -106,10 +116,38 @@ public class Events extends GQuery {
     return this;
   }
 
+  /**
+   * Binds a set of handlers to a particular Event for each matched element, the options make
+   * the handlers passive or limit how often they are called, see {@link BindOptions}.
+   */
+  public Events bind(BindOptions options, int eventbits, String namespace, Object data,
+      Function... funcs) {
+    for (Element e : elements()) {
+      if (isEventCapable(e)) {
+        EventsListener.getInstance(e).bind(options, eventbits, namespace, data, funcs);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Binds a set of handlers to a particular Event for each matched element, the options make
+   * the handlers passive or limit how often they are called, see {@link BindOptions}.
+   *
+   * Ex: $(window).as(Events).bind(new BindOptions().setThrottle(100), "scroll", null, handler);
+   */
+  public Events bind(BindOptions options, String event, Object data, Function... funcs) {
+    for (Element e : elements()) {
+      if (isEventCapable(e)) {
+        EventsListener.getInstance(e).bind(options, event, data, funcs);
+      }
+    }
+    return this;
+  }
+
 
   public GQuery die(int eventbits, String nameSpace) {
-    EventsListener.getInstance(Element.is(currentContext) ? (Element) currentContext : body).die(
-        eventbits, nameSpace, null, currentSelector);
+    getLiveListener().die(eventbits, nameSpace, null, currentSelector);
     return this;
   }
 
@@ -124,8 +162,7 @@ public class Events extends GQuery {
    * handlers corresponding of the GQuery selector will be removed
    */
   public GQuery die(String eventName) {
-    EventsListener.getInstance(Element.is(currentContext) ? (Element) currentContext : body).die(
-        eventName, currentSelector);
+    getLiveListener().die(eventName, currentSelector);
     return this;
   }
 
@@ -135,15 +172,13 @@ public class Events extends GQuery {
   }
 
   public GQuery live(int eventbits, String nameSpace, final Object data, Function... funcs) {
-    EventsListener.getInstance(Element.is(currentContext) ? (Element) currentContext : body).live(
-        eventbits, nameSpace, null, currentSelector, data, funcs);
+    getLiveListener().live(eventbits, nameSpace, null, currentSelector, data, funcs);
     return this;
 
   }
 
   public GQuery live(String eventName, final Object data, Function... funcs) {
-    EventsListener.getInstance(Element.is(currentContext) ? (Element) currentContext : body).live(
-        eventName, currentSelector, data, funcs);
+    getLiveListener().live(eventName, currentSelector, data, funcs);
     return this;
   }
 
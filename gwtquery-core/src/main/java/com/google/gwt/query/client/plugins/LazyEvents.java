@@ -18,6 +18,7 @@ import com.google.gwt.dom.client.Node;
 import com.google.gwt.query.client.Function;
 import com.google.gwt.query.client.GQuery;
 import com.google.gwt.query.client.js.JsUtils;
+import com.google.gwt.query.client.plugins.events.BindOptions;
 import com.google.gwt.query.client.plugins.events.EventsListener;
 import com.google.gwt.query.client.plugins.events.EventsListener.SpecialEvent;
 import com.google.gwt.query.client.plugins.events.GqEvent;
@@ -65,6 +66,20 @@ public interface LazyEvents<T> extends LazyBase<T>{
    */
   LazyEvents<T> bind(String event, Object data, Function... funcs);
 
+  /**
+   * Binds a set of handlers to a particular Event for each matched element, the options make
+   * the handlers passive or limit how often they are called, see {@link BindOptions}.
+   */
+  LazyEvents<T> bind(BindOptions options, int eventbits, String namespace, Object data, Function... funcs);
+
+  /**
+   * Binds a set of handlers to a particular Event for each matched element, the options make
+   * the handlers passive or limit how often they are called, see {@link BindOptions}.
+   *
+   * Ex: $(window).as(Events).bind(new BindOptions().setThrottle(100), "scroll", null, handler);
+   */
+  LazyEvents<T> bind(BindOptions options, String event, Object data, Function... funcs);
+
   GQuery die(int eventbits);
 
   /**
@@ -15,6 +15,8 @@
  */
 package com.google.gwt.query.client.plugins;
 
+import com.google.gwt.query.client.plugins.events.BindOptions;
+
 /**
  * Object use to configure a Plugin extending {@link MousePlugin}
  *
@@ -27,6 +29,8 @@ public class MouseOptions {
 
   private int distance;
 
+  private BindOptions moveOptions;
+
   public MouseOptions() {
     initDefault();
   }
@@ -57,6 +61,13 @@ public class MouseOptions {
     return distance;
   }
 
+  /**
+   * Return the options used to bind the mousemove handler while dragging, or null.
+   */
+  public BindOptions getMoveOptions() {
+    return moveOptions;
+  }
+
   /**
    * Prevents starting of the plugin on specified elements
    *
@@ -86,6 +97,16 @@ public class MouseOptions {
     this.distance = distance;
   }
 
+  /**
+   * Options used to bind the mousemove handler while dragging. Ex: new
+   * BindOptions().setFrame(true) moves the element once per animation frame, a move waiting
+   * for the next frame when the button is released is discarded. Touch moves are not affected,
+   * since they have to prevent the default scroll.
+   */
+  public void setMoveOptions(BindOptions moveOptions) {
+    this.moveOptions = moveOptions;
+  }
+
   protected void initDefault() {
     delay = 0;
     distance = 1; // by default, the mouse have to move one pixel !
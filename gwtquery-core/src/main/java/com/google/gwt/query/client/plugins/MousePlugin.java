@@ -18,6 +18,7 @@ import com.google.gwt.dom.client.Element;
 import com.google.gwt.dom.client.NativeEvent;
 import com.google.gwt.query.client.Function;
 import com.google.gwt.query.client.GQuery;
+import com.google.gwt.query.client.plugins.events.BindOptions;
 import com.google.gwt.query.client.plugins.events.GqEvent;
 import com.google.gwt.user.client.Event;
 import com.google.gwt.user.client.ui.Label;
@@ -231,13 +232,17 @@ public abstract class MousePlugin extends UiPlugin {
 
     int endEvents = touchSupported ? Event.ONTOUCHEND : Event.ONMOUSEUP;
 
-    $(document).as(Events).bind(moveEvent, getPluginName(), (Object) null, new Function() {
-      @Override
-      public boolean f(com.google.gwt.user.client.Event e) {
-        mouseMove(element, (GqEvent) GqEvent.create(e));
-        return false;
-      }
-    }).bind(endEvents, getPluginName(), (Object) null, new Function() {
+    // touch moves must not be deferred so as they can prevent scrolling
+    BindOptions moveOptions = touchSupported ? null : options.getMoveOptions();
+
+    $(document).as(Events).bind(moveOptions, moveEvent, getPluginName(), (Object) null,
+        new Function() {
+          @Override
+          public boolean f(com.google.gwt.user.client.Event e) {
+            mouseMove(element, (GqEvent) GqEvent.create(e));
+            return false;
+          }
+        }).bind(endEvents, getPluginName(), (Object) null, new Function() {
       @Override
       public boolean f(com.google.gwt.user.client.Event e) {
         mouseUp(element, (GqEvent) GqEvent.create(e));
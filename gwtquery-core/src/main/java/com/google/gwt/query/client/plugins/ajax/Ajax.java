@@ -36,6 +36,9 @@ public class Ajax extends GQuery {
    * Ajax Settings object
    */
   public interface Settings extends JsonBuilder {
+    boolean getBatch();
+    boolean getCache();
+    int getCacheTtl();
     String getContentType();
     Element getContext();
     Properties getData();
@@ -44,11 +47,29 @@ public class Ajax extends GQuery {
     Function getError();
     Properties getHeaders();
     String getPassword();
+    int getPriority();
+    Function getRecord();
     Function getSuccess();
     int getTimeout();
     String getType();
     String getUrl();
     String getUsername();
+    /**
+     * When true the request is sent together with other requests in one POST to
+     * the endpoint of the {@link AjaxBatch} returned by {@link Ajax#getBatch()}.
+     * It has no effect while that batch has no endpoint.
+     */
+    Settings setBatch(boolean b);
+    /**
+     * When true identical requests in flight are merged and successful responses
+     * are stored in the {@link AjaxCache} returned by {@link Ajax#getCache()}.
+     */
+    Settings setCache(boolean b);
+    /**
+     * Milliseconds a cached response is valid, {@link AjaxCache#getTtl()} is used
+     * when it is not set.
+     */
+    Settings setCacheTtl(int t);
     Settings setContentType(String t);
     Settings setContext(Element e);
     Settings setData(Properties p);
@@ -57,6 +78,18 @@ public class Ajax extends GQuery {
     Settings setError(Function f);
     Settings setHeaders(Properties p);
     Settings setPassword(String p);
+    /**
+     * Requests with higher priority are sent first when the limit of requests
+     * in flight is reached, see {@link AjaxScheduler}.
+     */
+    Settings setPriority(int p);
+    /**
+     * When set the response is parsed progressively as newline delimited json
+     * and each record is passed to this function as it arrives, see
+     * {@link AjaxStream}. The success function receives the number of records,
+     * http errors are passed to the error function as in the rest of requests.
+     */
+    Settings setRecord(Function f);
     Settings setSuccess(Function f);
     Settings setTimeout(int t);
     Settings setType(String t);
@@ -103,7 +136,7 @@ public class Ajax extends GQuery {
    * @param onError the function to execute on error
    * @param settings a Properties object with the configuration of the Ajax request.
    */
-  public static void ajax(Settings settings) {
+  public static void ajax(final Settings settings) {
 
     final Function onSuccess = settings.getSuccess();
     if (onSuccess != null) {
@@ -116,7 +149,7 @@ public class Ajax extends GQuery {
     }
 
     Method httpMethod = resolveHttpMethod(settings);
-    String data = resolveData(settings, httpMethod);
+    final String data = resolveData(settings, httpMethod);
     final String url = resolveUrl(settings, httpMethod, data);
     final String dataType = settings.getDataType();
 
@@ -126,50 +159,115 @@ public class Ajax extends GQuery {
       return;
     }
 
+    if (settings.getBatch()
+        && getBatch().add(httpMethod.toString(), url, httpMethod == RequestBuilder.GET ? null
+            : data, dataType, onSuccess, onError)) {
+      return;
+    }
+
+    final AjaxStream stream;
+    if (settings.getRecord() != null) {
+      Function onRecord = settings.getRecord();
+      onRecord.setElement(settings.getContext());
+      stream = new AjaxStream(onRecord, onSuccess, onError);
+    } else {
+      stream = null;
+    }
+
+    final String cacheKey;
+    if (settings.getCache() && stream == null) {
+      cacheKey = AjaxCache.key(httpMethod.toString(), url, data);
+      if (getCache().lookup(cacheKey, new AjaxCache.Waiter(url, dataType, onSuccess, onError))) {
+        return;
+      }
+    } else {
+      cacheKey = null;
+    }
+    final int cacheTtl = settings.getCacheTtl();
+
     final RequestBuilder requestBuilder = createRequestBuilder(settings, httpMethod, url, data);
+    final String method = httpMethod.toString();
+    final AjaxScheduler.Job job = new AjaxScheduler.Job(settings, url, settings.getPriority()) {
+      void abort() {
+        fail(cacheKey, null, new RequestException("abort"), onError);
+      }
+
+      void send() {
+        if (stream != null) {
+          stream.send(settings, method, url, data, this);
+          return;
+        }
+        try {
+          requestBuilder.send();
+        } catch (RequestException e) {
+          getScheduler().done(this);
+          if (cacheKey != null) {
+            getCache().failed(cacheKey, null, e);
+          } else if (onError != null) {
+            onError.f(null, -1, null, null, e);
+          }
+        }
+      }
+    };
     requestBuilder.setCallback(new RequestCallback() {
       public void onError(Request request, Throwable exception) {
-        if (onError != null) {
-          onError.f(null, exception.getMessage(), request, null, exception);
-        }
+        getScheduler().done(job);
+        fail(cacheKey, request, exception, onError);
       }
 
       public void onResponseReceived(Request request, Response response) {
-        int statusCode = response.getStatusCode();
-        if (statusCode <= 0 || statusCode >= 400) {
-          if (statusCode == 0) {
-            // Just warn the developer about the status code
-            GWT.log("GQuery.ajax error, the response.statusCode is 0, this usually happens when you try to access an external server without CORS enabled. url=" + url);
-          }
-          if (onError != null) {
-            onError.fe(response.getText(), "error", request, response);
-          }
-        } else if (onSuccess != null) {
-          Object retData = null;
-          try {
-            if ("xml".equalsIgnoreCase(dataType)) {
-              retData = JsUtils.parseXML(response.getText());
-            } else if ("json".equalsIgnoreCase(dataType)) {
-              retData = JsUtils.parseJSON(response.getText());
-            } else {
-              retData = response.getText();
-            }
-          } catch (Exception e) {
-            if (GWT.getUncaughtExceptionHandler() != null) {
-              GWT.getUncaughtExceptionHandler().onUncaughtException(e);
-            }
-          }
-          onSuccess.fe(retData, "success", request, response);
+        getScheduler().done(job);
+        if (cacheKey != null) {
+          getCache().done(cacheKey, request, response, cacheTtl);
+        } else {
+          onResponse(request, response, url, dataType, onSuccess, onError);
         }
       }
     });
+    getScheduler().submit(job);
+  }
+
+  private static void fail(String cacheKey, Request request, Throwable exception, Function onError) {
+    if (cacheKey != null) {
+      getCache().failed(cacheKey, request, exception);
+    } else {
+      onFailure(request, exception, onError);
+    }
+  }
+
+  static void onFailure(Request request, Throwable exception, Function onError) {
+    if (onError != null) {
+      onError.f(null, exception.getMessage(), request, null, exception);
+    }
+  }
 
-    try {
-      requestBuilder.send();
-    } catch (RequestException e) {
+  static void onResponse(Request request, Response response, String url, String dataType,
+      Function onSuccess, Function onError) {
+    int statusCode = response.getStatusCode();
+    if (statusCode <= 0 || statusCode >= 400) {
+      if (statusCode == 0) {
+        // Just warn the developer about the status code
+        GWT.log("GQuery.ajax error, the response.statusCode is 0, this usually happens when you try to access an external server without CORS enabled. url=" + url);
+      }
       if (onError != null) {
-        onError.f(null, -1, null, null, e);
+        onError.fe(response.getText(), "error", request, response);
+      }
+    } else if (onSuccess != null) {
+      Object retData = null;
+      try {
+        if ("xml".equalsIgnoreCase(dataType)) {
+          retData = JsUtils.parseXML(response.getText());
+        } else if ("json".equalsIgnoreCase(dataType)) {
+          retData = JsUtils.parseJSON(response.getText());
+        } else {
+          retData = response.getText();
+        }
+      } catch (Exception e) {
+        if (GWT.getUncaughtExceptionHandler() != null) {
+          GWT.getUncaughtExceptionHandler().onUncaughtException(e);
+        }
       }
+      onSuccess.fe(retData, "success", request, response);
     }
   }
 
@@ -178,16 +276,7 @@ public class Ajax extends GQuery {
     RequestBuilder requestBuilder = new RequestBuilder(httpMethod, url);
 
     if (data != null && httpMethod != RequestBuilder.GET) {
-      String ctype = settings.getContentType();
-      if (ctype == null) {
-        String type = settings.getDataType();
-        if (type != null && type.toLowerCase().startsWith("json")) {
-          ctype = "application/json; charset=utf-8";
-        } else {
-          ctype = FormPanel.ENCODING_URLENCODED;
-        }
-      }
-      requestBuilder.setHeader("Content-Type", ctype);
+      requestBuilder.setHeader("Content-Type", resolveContentType(settings));
       requestBuilder.setRequestData(data);
     }
 
@@ -213,6 +302,19 @@ public class Ajax extends GQuery {
     return requestBuilder;
   }
 
+  static String resolveContentType(Settings settings) {
+    String ctype = settings.getContentType();
+    if (ctype == null) {
+      String type = settings.getDataType();
+      if (type != null && type.toLowerCase().startsWith("json")) {
+        ctype = "application/json; charset=utf-8";
+      } else {
+        ctype = FormPanel.ENCODING_URLENCODED;
+      }
+    }
+    return ctype;
+  }
+
   private static String resolveUrl(Settings settings, Method httpMethod, String data) {
     String url = settings.getUrl();
     assert url != null : "no url found in settings";
@@ -278,6 +380,61 @@ public class Ajax extends GQuery {
     ajax(settings.setUrl(url));
   }
 
+  private static AjaxBatch batch;
+
+  /**
+   * Return the batch which collects requests with the batch setting enabled.
+   */
+  public static AjaxBatch getBatch() {
+    if (batch == null) {
+      batch = new AjaxBatch();
+    }
+    return batch;
+  }
+
+  /**
+   * Replace the batch used by requests with the batch setting enabled.
+   */
+  public static void setBatch(AjaxBatch b) {
+    batch = b;
+  }
+
+  private static JsonpRegistry jsonpRegistry;
+
+  /**
+   * Return the registry of the callbacks used by jsonp requests.
+   */
+  public static JsonpRegistry getJsonpRegistry() {
+    if (jsonpRegistry == null) {
+      jsonpRegistry = new JsonpRegistry();
+    }
+    return jsonpRegistry;
+  }
+
+  private static AjaxCache cache;
+
+  /**
+   * Return the cache used by requests with the cache setting enabled.
+   */
+  public static AjaxCache getCache() {
+    if (cache == null) {
+      cache = new AjaxCache();
+    }
+    return cache;
+  }
+
+  private static AjaxScheduler scheduler;
+
+  /**
+   * Return the scheduler which limits the number of requests in flight.
+   */
+  public static AjaxScheduler getScheduler() {
+    if (scheduler == null) {
+      scheduler = new AjaxScheduler();
+    }
+    return scheduler;
+  }
+
   public static Settings createSettings() {
     return createSettings($$(""));
   }
@@ -326,7 +483,6 @@ public class Ajax extends GQuery {
     if (!url.contains("=?") && !url.contains("callback=")) {
       url += (url.contains("?") ? "&" : "?") + "callback=?";
     }
-    url += "&_=" + System.currentTimeMillis();
     Element e = $("head").get(0);
     if (e == null) {
       e = document.getDocumentElement();
@@ -386,40 +542,11 @@ public class Ajax extends GQuery {
     return this;
   }
 
-  private static int callBackCounter = 0;
-
-  public static native void getJsonpImpl(Element elem, String url, String charset, Function success, Function error, int timeout) /*-{
-    var fName = "__GQ_cb_" + @com.google.gwt.query.client.plugins.ajax.Ajax::callBackCounter ++;
-    var done = false;
-    $wnd[fName] = function(data) {
-      if (!done) {
-        done = true;
-        $wnd[fName] = null;
-        success.@com.google.gwt.query.client.Function::fe(Ljava/lang/Object;)(data);
-      }
-    }
-    function err() {
-      if (!done) {
-        done = true;
-        $wnd[fName] = null;
-        var func = error ? error : success;
-        func.@com.google.gwt.query.client.Function::fe(Ljava/lang/Object;)();
-      }
-    }
-    if (timeout) {
-      setTimeout(err, timeout);
-    }
-
-    url = url.replace(/=\?/g,'=' + fName);
-    var script = document.createElement("script" );
-    script.async = "async";
-    if (charset) script.charset = charset;
-    script.src = url;
-    script.onload = script.onreadystatechange = function(evt) {
-      script.onload = script.onreadystatechange = null;
-      elem.removeChild(script);
-      err();
-    };
-    elem.insertBefore(script, elem.firstChild);
-  }-*/;
+  /**
+   * Inject a script to request the url, the string '=?' in the url is replaced by
+   * the name of a callback registered in the {@link JsonpRegistry}.
+   */
+  public static void getJsonpImpl(Element elem, String url, String charset, Function success, Function error, int timeout) {
+    getJsonpRegistry().request(elem, url, charset, success, error, timeout);
+  }
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.plugins.ajax;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.http.client.Header;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.query.client.Function;
+import com.google.gwt.query.client.Properties;
+import com.google.gwt.query.client.js.JsObjectArray;
+import com.google.gwt.query.client.js.JsUtils;
+
+/**
+ * Collects the Ajax requests with the batch setting enabled and sends them
+ * together in one POST to the configured endpoint.
+ *
+ * The body of the POST is a json array with one object per request having the
+ * properties 'type', 'url', 'data' and 'dataType'. The server has to answer a
+ * json array with one element per request, in the same order. An element can
+ * be an object with a numeric 'status' and the response in 'data', otherwise
+ * the element itself is taken as the successful response.
+ *
+ * Requests are collected during {@link #getWindow()} milliseconds or until
+ * there are {@link #getMaxSize()} of them. Batching is disabled until an
+ * endpoint is set.
+ */
+public class AjaxBatch {
+
+  public static final int DEFAULT_WINDOW = 10;
+
+  public static final int DEFAULT_MAX_SIZE = 20;
+
+  private static class Call {
+    final String url, dataType;
+    final Function onSuccess, onError;
+
+    Call(String url, String dataType, Function onSuccess, Function onError) {
+      this.url = url;
+      this.dataType = dataType;
+      this.onSuccess = onSuccess;
+      this.onError = onError;
+    }
+  }
+
+  // A response extracted from an element of the batch response
+  private static class BatchResponse extends Response {
+    final int status;
+    final String text;
+
+    BatchResponse(int status, String text) {
+      this.status = status;
+      this.text = text;
+    }
+
+    public String getHeader(String header) {
+      return null;
+    }
+
+    public Header[] getHeaders() {
+      return new Header[0];
+    }
+
+    public String getHeadersAsString() {
+      return "";
+    }
+
+    public int getStatusCode() {
+      return status;
+    }
+
+    public String getStatusText() {
+      return "";
+    }
+
+    public String getText() {
+      return text;
+    }
+  }
+
+  private static native int getStatus(JavaScriptObject a, int i) /*-{
+    var e = a[i];
+    return e && typeof e == "object" && typeof e.status == "number" ? e.status : 200;
+  }-*/;
+
+  private static native String getText(JavaScriptObject a, int i) /*-{
+    var e = a[i];
+    if (e && typeof e == "object" && typeof e.status == "number") e = e.data;
+    return e === undefined || e === null ? "" : typeof e == "string" ? e
+      : typeof e != "object" ? String(e)
+      : @com.google.gwt.query.client.js.JsUtils::JSON2String(Lcom/google/gwt/core/client/JavaScriptObject;)(e);
+  }-*/;
+
+  // JsUtils.isArray accepts any object with a numeric length and fails with null
+  private static native boolean isArray(JavaScriptObject a) /*-{
+    return a != null && Object.prototype.toString.call(a) == '[object Array]';
+  }-*/;
+
+  private static native int length(JavaScriptObject a) /*-{
+    return a.length;
+  }-*/;
+
+  private String endpoint;
+  private int window = DEFAULT_WINDOW;
+  private int maxSize = DEFAULT_MAX_SIZE;
+  private List<Call> calls = new ArrayList<Call>();
+  private JsObjectArray<Properties> items = JsObjectArray.create();
+  private boolean scheduled = false;
+  private int batches, requests;
+
+  private final RepeatingCommand timer = new RepeatingCommand() {
+    public boolean execute() {
+      scheduled = false;
+      flush();
+      return false;
+    }
+  };
+
+  /**
+   * Send now the requests collected so far.
+   */
+  public void flush() {
+    if (calls.isEmpty()) {
+      return;
+    }
+    final List<Call> sent = calls;
+    String payload = JsUtils.JSON2String(items);
+    calls = new ArrayList<Call>();
+    items = JsObjectArray.create();
+    batches ++;
+
+    send(endpoint, payload, new Function() {
+      public void f() {
+        String text = String.valueOf(getData()[0]);
+        JavaScriptObject a = JsUtils.parseJSON(text);
+        if (!isArray(a)) {
+          RequestException e = new RequestException("Malformed batch response: " + text);
+          for (Call c : sent) {
+            Ajax.onFailure(null, e, c.onError);
+          }
+          return;
+        }
+        for (int i = 0, l = sent.size(); i < l; i++) {
+          Call c = sent.get(i);
+          if (i < length(a)) {
+            Ajax.onResponse(null, new BatchResponse(getStatus(a, i), getText(a, i)), c.url,
+                c.dataType, c.onSuccess, c.onError);
+          } else {
+            Ajax.onFailure(null, new RequestException("No response in batch for " + c.url),
+                c.onError);
+          }
+        }
+      }
+    }, new Function() {
+      public void f() {
+        for (Call c : sent) {
+          if (c.onError != null) {
+            c.onError.fe(getData());
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Return the number of batches sent.
+   */
+  public int getBatches() {
+    return batches;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Return the number of requests waiting to be sent.
+   */
+  public int getPending() {
+    return calls.size();
+  }
+
+  /**
+   * Return the number of requests sent in batches.
+   */
+  public int getRequests() {
+    return requests;
+  }
+
+  public int getWindow() {
+    return window;
+  }
+
+  /**
+   * Set the url which receives the batches, null disables batching.
+   */
+  public AjaxBatch setEndpoint(String url) {
+    if (url == null) {
+      // pending calls go to the previous endpoint
+      flush();
+    }
+    endpoint = url;
+    return this;
+  }
+
+  /**
+   * Set the maximum number of requests per batch.
+   */
+  public AjaxBatch setMaxSize(int max) {
+    maxSize = Math.max(1, max);
+    return this;
+  }
+
+  /**
+   * Set the milliseconds to wait for more requests before sending a batch.
+   */
+  public AjaxBatch setWindow(int millis) {
+    window = Math.max(0, millis);
+    return this;
+  }
+
+  public String toString() {
+    return "batches=" + batches + " requests=" + requests + " pending=" + calls.size();
+  }
+
+  /**
+   * Add a request to the next batch. Return false when batching is disabled.
+   */
+  boolean add(String type, String url, String data, String dataType, Function onSuccess,
+      Function onError) {
+    if (endpoint == null) {
+      return false;
+    }
+    Properties p = Properties.create();
+    p.set("type", type);
+    p.set("url", url);
+    if (data != null) {
+      p.set("data", data);
+    }
+    if (dataType != null) {
+      p.set("dataType", dataType);
+    }
+    items.add(p);
+    calls.add(new Call(url, dataType, onSuccess, onError));
+    requests ++;
+    if (calls.size() >= maxSize) {
+      flush();
+    } else if (!scheduled) {
+      scheduled = true;
+      Scheduler.get().scheduleFixedDelay(timer, window);
+    }
+    return true;
+  }
+
+  /**
+   * Send the payload to the endpoint. The success function receives the text of the
+   * response, override it to use a different transport.
+   */
+  protected void send(String url, String payload, Function onSuccess, Function onError) {
+    Ajax.ajax(Ajax.createSettings().setUrl(url).setType("post").setDataType("text")
+        .setContentType("application/json; charset=utf-8").setDataString(payload)
+        .setSuccess(onSuccess).setError(onError));
+  }
+}
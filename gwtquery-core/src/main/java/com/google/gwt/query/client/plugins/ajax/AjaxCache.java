@@ -0,0 +1,238 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.plugins.ajax;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.query.client.Function;
+import com.google.gwt.query.client.impl.LruCache;
+
+/**
+ * Response cache used by Ajax requests with the cache setting enabled.
+ *
+ * Requests with the same method, url and data which are sent while the first
+ * one is still in flight are merged, so there is only one network call and
+ * every callback receives its response. Successful responses are stored until
+ * they expire, evicting the least recently used ones when the cache is full.
+ */
+public class AjaxCache {
+
+  /**
+   * Milliseconds a response is kept when neither the settings nor
+   * {@link #setTtl(int)} give a ttl.
+   */
+  public static final int DEFAULT_TTL = 60 * 1000;
+
+  /**
+   * Initial number of responses stored, use {@link #setMaxEntries(int)} to
+   * change it.
+   */
+  public static final int DEFAULT_SIZE = 100;
+
+  // A callback waiting for a response
+  static class Waiter {
+    final String url, dataType;
+    final Function onSuccess, onError;
+
+    Waiter(String url, String dataType, Function onSuccess, Function onError) {
+      this.url = url;
+      this.dataType = dataType;
+      this.onSuccess = onSuccess;
+      this.onError = onError;
+    }
+  }
+
+  private static class Entry {
+    final Request request;
+    final Response response;
+    final long expires;
+
+    Entry(Request request, Response response, long expires) {
+      this.request = request;
+      this.response = response;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * Return the key identifying a request.
+   */
+  static String key(String method, String url, String data) {
+    return method + " " + url + (data == null ? "" : " " + data);
+  }
+
+  private final LruCache<String, Entry> store = new LruCache<String, Entry>(DEFAULT_SIZE);
+  private final Map<String, List<Waiter>> inFlight = new HashMap<String, List<Waiter>>();
+  private int hits, misses, merged, expired;
+  private int ttl = DEFAULT_TTL;
+
+  /**
+   * Remove all the stored responses, requests in flight are not affected.
+   */
+  public void clear() {
+    store.clear();
+  }
+
+  /**
+   * Return the number of responses which have been removed because they
+   * were expired.
+   */
+  public int getExpired() {
+    return expired;
+  }
+
+  /**
+   * Return the number of requests served with a stored response.
+   */
+  public int getHits() {
+    return hits;
+  }
+
+  public int getMaxEntries() {
+    return store.getMaxSize();
+  }
+
+  /**
+   * Return the number of requests which have been merged with an identical
+   * request in flight.
+   */
+  public int getMerged() {
+    return merged;
+  }
+
+  /**
+   * Return the number of requests which have been sent to the server.
+   */
+  public int getMisses() {
+    return misses;
+  }
+
+  /**
+   * Return the number of requests waiting for a response.
+   */
+  public int getPending() {
+    return inFlight.size();
+  }
+
+  public void resetStats() {
+    hits = misses = merged = expired = 0;
+    store.resetStats();
+  }
+
+  /**
+   * Change the maximum number of responses stored, zero disables storing
+   * responses but identical requests are still merged.
+   */
+  public void setMaxEntries(int max) {
+    store.setMaxSize(max);
+  }
+
+  /**
+   * Change the milliseconds a response is kept when the settings do not
+   * have a ttl.
+   */
+  public void setTtl(int millis) {
+    ttl = millis > 0 ? millis : DEFAULT_TTL;
+  }
+
+  public int getTtl() {
+    return ttl;
+  }
+
+  public int size() {
+    return store.size();
+  }
+
+  public String toString() {
+    return "size=" + size() + " max=" + getMaxEntries() + " hits=" + hits + " misses="
+        + misses + " merged=" + merged + " expired=" + expired + " evictions="
+        + store.getEvictions();
+  }
+
+  /**
+   * Deliver a stored response, in a deferred command, or add the waiter to an identical request in
+   * flight. Return false when the request has to be sent, in this case
+   * following identical requests wait for it until {@link #done} or
+   * {@link #failed} are called.
+   */
+  boolean lookup(String key, Waiter w) {
+    Entry e = store.get(key);
+    if (e != null && e.expires < System.currentTimeMillis()) {
+      store.remove(key);
+      expired ++;
+      e = null;
+    }
+    if (e != null) {
+      hits ++;
+      final Entry hit = e;
+      final Waiter waiter = w;
+      // delivered asynchronously, like the responses of the network
+      Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+        public void execute() {
+          Ajax.onResponse(hit.request, hit.response, waiter.url, waiter.dataType,
+              waiter.onSuccess, waiter.onError);
+        }
+      });
+      return true;
+    }
+    List<Waiter> waiters = inFlight.get(key);
+    if (waiters != null) {
+      merged ++;
+      waiters.add(w);
+      return true;
+    }
+    misses ++;
+    waiters = new ArrayList<Waiter>();
+    waiters.add(w);
+    inFlight.put(key, waiters);
+    return false;
+  }
+
+  /**
+   * Store the response of a request and deliver it to all its waiters.
+   */
+  void done(String key, Request request, Response response, int ttl) {
+    int status = response.getStatusCode();
+    if (status >= 200 && status < 300) {
+      store.put(key, new Entry(request, response, System.currentTimeMillis()
+          + (ttl > 0 ? ttl : this.ttl)));
+    }
+    for (Waiter w : remove(key)) {
+      Ajax.onResponse(request, response, w.url, w.dataType, w.onSuccess, w.onError);
+    }
+  }
+
+  /**
+   * Notify all the waiters of a request that it has failed.
+   */
+  void failed(String key, Request request, Throwable exception) {
+    for (Waiter w : remove(key)) {
+      Ajax.onFailure(request, exception, w.onError);
+    }
+  }
+
+  private List<Waiter> remove(String key) {
+    List<Waiter> ret = inFlight.remove(key);
+    return ret == null ? new ArrayList<Waiter>() : ret;
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.plugins.ajax;
+
+import com.google.gwt.user.client.Window;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scheduler which limits the number of Ajax requests in flight per host.
+ *
+ * Requests exceeding the limit wait in a queue, ordered by the priority set
+ * with {@link Ajax.Settings#setPriority(int)} and then by arrival, and they
+ * are sent as soon as a previous request to the same host finishes. Queued
+ * requests can be cancelled, their error callback receives an 'abort'
+ * exception.
+ */
+public class AjaxScheduler {
+
+  public static final int HIGH = 10;
+  public static final int NORMAL = 0;
+  public static final int LOW = -10;
+
+  /**
+   * Default maximum number of requests in flight per host, 0 means unlimited.
+   * It is disabled because long polling requests would block the other ones,
+   * use <code>Ajax.getScheduler().setMaxPerHost(6)</code> to get a limit
+   * similar to the one used by browsers.
+   */
+  public static final int DEFAULT_MAX_PER_HOST = 0;
+
+  /**
+   * A request waiting for or using a connection.
+   */
+  abstract static class Job {
+    final Object owner;
+    final String host;
+    final int priority;
+    long queued;
+    int seq;
+
+    Job(Object owner, String url, int priority) {
+      this.owner = owner;
+      this.host = getHost(url);
+      this.priority = priority;
+    }
+
+    /**
+     * Cancel the job before it has been sent.
+     */
+    abstract void abort();
+
+    /**
+     * Send the request, {@link AjaxScheduler#done} has to be called when
+     * it finishes.
+     */
+    abstract void send();
+  }
+
+  /**
+   * Return the host of an url, relative urls return the host of the page.
+   */
+  public static String getHost(String url) {
+    int start = url.startsWith("//") ? 2 : url.indexOf("://");
+    if (start < 0 || url.substring(0, start).matches(".*[/?#].*")) {
+      return Window.Location.getHost().toLowerCase();
+    }
+    start = url.startsWith("//") ? 2 : start + 3;
+    int end = start;
+    while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+      end++;
+    }
+    return url.substring(start, end).toLowerCase();
+  }
+
+  private int maxPerHost = DEFAULT_MAX_PER_HOST;
+  private final List<Job> queue = new ArrayList<Job>();
+  private final Map<String, Integer> inFlight = new HashMap<String, Integer>();
+  private int running, seq, dispatched, cancelled;
+  private long totalWait, maxWait;
+
+  /**
+   * Cancel all the queued requests, requests in flight are not affected.
+   * Return the number of requests cancelled.
+   */
+  public int cancelAll() {
+    List<Job> jobs = new ArrayList<Job>(queue);
+    queue.clear();
+    for (Job j : jobs) {
+      abort(j);
+    }
+    return jobs.size();
+  }
+
+  /**
+   * Cancel the queued requests created with the given settings.
+   * Return the number of requests cancelled.
+   */
+  public int cancel(Ajax.Settings settings) {
+    List<Job> jobs = new ArrayList<Job>();
+    for (int i = queue.size() - 1; i >= 0; i--) {
+      if (queue.get(i).owner == settings) {
+        jobs.add(0, queue.remove(i));
+      }
+    }
+    for (Job j : jobs) {
+      abort(j);
+    }
+    return jobs.size();
+  }
+
+  /**
+   * Return the average number of milliseconds requests have waited in the queue.
+   */
+  public double getAverageWait() {
+    return dispatched == 0 ? 0 : (double) totalWait / dispatched;
+  }
+
+  public int getCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Return the number of requests sent so far.
+   */
+  public int getDispatched() {
+    return dispatched;
+  }
+
+  public int getInFlight() {
+    return running;
+  }
+
+  public int getInFlight(String host) {
+    Integer n = inFlight.get(host.toLowerCase());
+    return n == null ? 0 : n;
+  }
+
+  public int getMaxPerHost() {
+    return maxPerHost;
+  }
+
+  /**
+   * Return the maximum number of milliseconds a request has waited in the queue.
+   */
+  public long getMaxWait() {
+    return maxWait;
+  }
+
+  /**
+   * Return the number of requests waiting for a connection.
+   */
+  public int getQueued() {
+    return queue.size();
+  }
+
+  public int getQueued(String host) {
+    int ret = 0;
+    for (Job j : queue) {
+      if (j.host.equals(host.toLowerCase())) {
+        ret++;
+      }
+    }
+    return ret;
+  }
+
+  public void resetStats() {
+    dispatched = cancelled = 0;
+    totalWait = maxWait = 0;
+  }
+
+  /**
+   * Change the maximum number of requests in flight per host, zero means no limit.
+   */
+  public void setMaxPerHost(int max) {
+    maxPerHost = Math.max(0, max);
+    dispatch();
+  }
+
+  public String toString() {
+    return "inFlight=" + running + " queued=" + queue.size() + " dispatched=" + dispatched
+        + " cancelled=" + cancelled + " averageWait=" + getAverageWait() + " maxWait=" + maxWait;
+  }
+
+  /**
+   * Release the connection used by a job and send the next ones.
+   */
+  void done(Job job) {
+    Integer n = inFlight.get(job.host);
+    if (n != null) {
+      running--;
+      if (n <= 1) {
+        inFlight.remove(job.host);
+      } else {
+        inFlight.put(job.host, n - 1);
+      }
+    }
+    dispatch();
+  }
+
+  /**
+   * Send the job now if its host is not busy, otherwise enqueue it.
+   */
+  void submit(Job job) {
+    job.queued = System.currentTimeMillis();
+    job.seq = seq++;
+    if (queue.isEmpty() && canSend(job.host)) {
+      start(job);
+      return;
+    }
+    int i = queue.size();
+    while (i > 0 && queue.get(i - 1).priority < job.priority) {
+      i--;
+    }
+    queue.add(i, job);
+    dispatch();
+  }
+
+  private void abort(Job j) {
+    cancelled++;
+    j.abort();
+  }
+
+  private boolean canSend(String host) {
+    return maxPerHost == 0 || getInFlight(host) < maxPerHost;
+  }
+
+  private void dispatch() {
+    for (int i = 0; i < queue.size();) {
+      Job j = queue.get(i);
+      if (canSend(j.host)) {
+        queue.remove(i);
+        start(j);
+        // a failed send could have modified the queue
+        i = 0;
+      } else {
+        i++;
+      }
+    }
+  }
+
+  private void start(Job job) {
+    long wait = System.currentTimeMillis() - job.queued;
+    totalWait += wait;
+    maxWait = Math.max(maxWait, wait);
+    dispatched++;
+    running++;
+    inFlight.put(job.host, getInFlight(job.host) + 1);
+    job.send();
+  }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.plugins.ajax;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.http.client.Header;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.query.client.Function;
+import com.google.gwt.query.client.Properties;
+
+/**
+ * Progressive parser of newline delimited json, used by Ajax requests with a
+ * record function set with {@link Ajax.Settings#setRecord(Function)}.
+ *
+ * The text received is parsed line by line and each record is passed to the
+ * record function as soon as it is complete. Parsing runs in slices of
+ * {@link #setTimeSlice(int)} milliseconds, yielding to the browser between
+ * them, so large responses do not block the ui.
+ *
+ * A stream can be fed manually with {@link #write(String)} and {@link #end()}.
+ */
+public class AjaxStream implements RepeatingCommand {
+
+  // The response of a request which failed with an http error
+  private static class StreamResponse extends Response {
+    final int status;
+    final String text, statusText, headers;
+
+    StreamResponse(JavaScriptObject xhr, int status) {
+      this.status = status;
+      text = text(xhr, 0);
+      statusText = prop(xhr, "statusText");
+      headers = headers(xhr);
+    }
+
+    public String getHeader(String header) {
+      for (Header h : getHeaders()) {
+        if (h.getName().equalsIgnoreCase(header)) {
+          return h.getValue();
+        }
+      }
+      return null;
+    }
+
+    public Header[] getHeaders() {
+      String[] lines = headers.trim().isEmpty() ? new String[0] : headers.trim().split("\\r?\\n");
+      Header[] r = new Header[lines.length];
+      for (int i = 0; i < lines.length; i++) {
+        int idx = lines[i].indexOf(':');
+        final String name = idx < 0 ? lines[i].trim() : lines[i].substring(0, idx).trim();
+        final String value = idx < 0 ? "" : lines[i].substring(idx + 1).trim();
+        r[i] = new Header() {
+          public String getName() {
+            return name;
+          }
+          public String getValue() {
+            return value;
+          }
+        };
+      }
+      return r;
+    }
+
+    public String getHeadersAsString() {
+      return headers;
+    }
+
+    public int getStatusCode() {
+      return status;
+    }
+
+    public String getStatusText() {
+      return statusText;
+    }
+
+    public String getText() {
+      return text;
+    }
+  }
+
+  /**
+   * Default number of milliseconds spent parsing records before yielding.
+   */
+  public static final int DEFAULT_TIME_SLICE = 10;
+
+  private final Function onRecord, onSuccess, onError;
+  private String buffer = "";
+  private int pos, received, records;
+  private int timeSlice = DEFAULT_TIME_SLICE;
+  private boolean ended, scheduled, failed;
+  private JavaScriptObject xhr;
+  private AjaxScheduler.Job job;
+
+  public AjaxStream(Function onRecord, Function onSuccess, Function onError) {
+    this.onRecord = onRecord;
+    this.onSuccess = onSuccess;
+    this.onError = onError;
+  }
+
+  /**
+   * Stop the request and discard the records not delivered yet.
+   */
+  public void abort() {
+    fail(new RequestException("abort"));
+  }
+
+  /**
+   * Signal that there is no more text, the last line does not need a
+   * trailing new line.
+   */
+  public void end() {
+    ended = true;
+    schedule();
+  }
+
+  public boolean execute() {
+    if (failed) {
+      return false;
+    }
+    boolean parsed = false;
+    try {
+      parsed = parse();
+    } finally {
+      if (!parsed && !failed) {
+        // the record function has thrown, the scheduler does not run this
+        // command again so the remaining records go in a new one
+        scheduled = false;
+        schedule();
+      }
+    }
+    if (!parsed) {
+      return false;
+    }
+    boolean more = buffer.indexOf('\n') >= 0 || ended && !buffer.isEmpty();
+    if (!more) {
+      scheduled = false;
+      if (ended && onSuccess != null) {
+        onSuccess.fe(records, "success");
+      }
+    }
+    return more;
+  }
+
+  // Parse the records available during a time slice, returns false when
+  // parsing failed.
+  private boolean parse() {
+    Duration d = new Duration();
+    while (d.elapsedMillis() < timeSlice) {
+      int idx = buffer.indexOf('\n', pos);
+      if (idx < 0 && !ended || pos >= buffer.length()) {
+        break;
+      }
+      String line = buffer.substring(pos, idx < 0 ? buffer.length() : idx).trim();
+      pos = idx < 0 ? buffer.length() : idx + 1;
+      if (!line.isEmpty()) {
+        Properties record;
+        try {
+          record = parseRecord(line);
+        } catch (Exception e) {
+          fail(e);
+          return false;
+        }
+        onRecord.fe(record, records++);
+      }
+    }
+    if (pos >= buffer.length() || pos > buffer.length() / 2) {
+      buffer = buffer.substring(pos);
+      pos = 0;
+    }
+    return true;
+  }
+
+  /**
+   * Return the number of records delivered so far.
+   */
+  public int getRecords() {
+    return records;
+  }
+
+  public int getTimeSlice() {
+    return timeSlice;
+  }
+
+  /**
+   * Set the maximum number of milliseconds spent parsing records before
+   * yielding to the browser.
+   */
+  public AjaxStream setTimeSlice(int millis) {
+    timeSlice = Math.max(1, millis);
+    return this;
+  }
+
+  /**
+   * Append text to the stream.
+   */
+  public void write(String text) {
+    if (!ended && !text.isEmpty()) {
+      buffer += text;
+      if (text.indexOf('\n') >= 0) {
+        schedule();
+      }
+    }
+  }
+
+  /**
+   * Send the request, the scheduler is notified when the response has been
+   * completely received.
+   */
+  void send(Ajax.Settings settings, String method, String url, String data,
+      AjaxScheduler.Job job) {
+    this.job = job;
+    xhr = open(method, url, settings.getUsername(), settings.getPassword(),
+        settings.getTimeout());
+    if (data != null && !"GET".equals(method)) {
+      setHeader(xhr, "Content-Type", Ajax.resolveContentType(settings));
+    }
+    Properties headers = settings.getHeaders();
+    if (headers != null) {
+      for (String h : headers.keys()) {
+        setHeader(xhr, h, headers.getStr(h));
+      }
+    }
+    send(xhr, data);
+  }
+
+  private void fail(Throwable e) {
+    if (!failed) {
+      failed = true;
+      buffer = "";
+      pos = 0;
+      if (xhr != null) {
+        abort(xhr);
+        finished();
+      }
+      Ajax.onFailure(null, e, onError);
+    }
+  }
+
+  private void finished() {
+    xhr = null;
+    if (job != null) {
+      Ajax.getScheduler().done(job);
+      job = null;
+    }
+  }
+
+  private void onLoad(int status) {
+    if (xhr == null) {
+      return;
+    }
+    if (status <= 0) {
+      finished();
+      fail(new RequestException("error " + status));
+    } else if (status >= 400) {
+      // the body of an http error is not a stream of records, it is given to
+      // the error function like the rest of ajax requests do
+      Response response = new StreamResponse(xhr, status);
+      finished();
+      failed = true;
+      buffer = "";
+      pos = 0;
+      if (onError != null) {
+        onError.fe(response.getText(), "error", null, response);
+      }
+    } else {
+      onProgress();
+      finished();
+      end();
+    }
+  }
+
+  private void onProgress() {
+    if (xhr != null) {
+      String text = text(xhr, received);
+      received += text.length();
+      write(text);
+    }
+  }
+
+  private void schedule() {
+    if (!scheduled && !failed) {
+      scheduled = true;
+      Scheduler.get().scheduleFixedDelay(this, 0);
+    }
+  }
+
+  private native JavaScriptObject open(String method, String url, String user,
+      String password, int timeout) /*-{
+    var s = this, xhr = new XMLHttpRequest();
+    xhr.open(method, url, true, user, password);
+    if (timeout > 0) xhr.timeout = timeout;
+    xhr.onprogress = $entry(function() {
+      s.@com.google.gwt.query.client.plugins.ajax.AjaxStream::onProgress()();
+    });
+    xhr.onreadystatechange = $entry(function() {
+      if (xhr.readyState == 4) {
+        xhr.onprogress = xhr.onreadystatechange = null;
+        s.@com.google.gwt.query.client.plugins.ajax.AjaxStream::onLoad(I)(xhr.status);
+      }
+    });
+    return xhr;
+  }-*/;
+
+  // Unlike JsUtils.parseJSON, a malformed line throws so the stream fails
+  private static native Properties parseRecord(String line) /*-{
+    return $wnd.JSON ? $wnd.JSON.parse(line) : eval("(" + line + ")");
+  }-*/;
+
+  private static native void abort(JavaScriptObject xhr) /*-{
+    xhr.onprogress = xhr.onreadystatechange = null;
+    xhr.abort();
+  }-*/;
+
+  private static native void send(JavaScriptObject xhr, String data) /*-{
+    xhr.send(data);
+  }-*/;
+
+  private static native void setHeader(JavaScriptObject xhr, String name, String value) /*-{
+    xhr.setRequestHeader(name, value);
+  }-*/;
+
+  private static native String headers(JavaScriptObject xhr) /*-{
+    return xhr.getAllResponseHeaders() || "";
+  }-*/;
+
+  private static native String prop(JavaScriptObject xhr, String name) /*-{
+    return xhr[name] || "";
+  }-*/;
+
+  private static native String text(JavaScriptObject xhr, int from) /*-{
+    var t = xhr.responseText;
+    return t && t.length > from ? t.substring(from) : "";
+  }-*/;
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.plugins.ajax;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.query.client.Function;
+
+/**
+ * Registry of the global callbacks used by jsonp requests.
+ *
+ * Callbacks are named after a slot, '__GQ_cb_0', '__GQ_cb_1', ..., and slots
+ * are reused once their request has finished, at that moment the global
+ * function and the script node are removed. Identical requests sent while the
+ * first one is in flight are merged and share its response.
+ *
+ * A request which times out keeps its slot until the browser finishes
+ * loading the script, so a late response cannot reach the next request using
+ * the slot. Those slots are reported as leaked by {@link #getLeaked()}.
+ */
+public class JsonpRegistry {
+
+  public static final String PREFIX = "__GQ_cb_";
+
+  private static class Call {
+    final int slot, seq;
+    final String key;
+    final List<Function> onSuccess = new ArrayList<Function>();
+    final List<Function> onError = new ArrayList<Function>();
+    Element script;
+    boolean done;
+
+    Call(int slot, int seq, String key) {
+      this.slot = slot;
+      this.seq = seq;
+      this.key = key;
+    }
+
+    void add(Function success, Function error) {
+      onSuccess.add(success);
+      onError.add(error != null ? error : success);
+    }
+  }
+
+  private final List<Call> slots = new ArrayList<Call>();
+  private final List<Integer> free = new ArrayList<Integer>();
+  private final Map<String, Call> pending = new HashMap<String, Call>();
+  private int seq, merged, leaked;
+
+  /**
+   * Return the number of requests waiting for a response.
+   */
+  public int getActive() {
+    return pending.size();
+  }
+
+  /**
+   * Return the number of timed out requests whose script has not finished
+   * loading yet, their callback and slot are released when it finishes.
+   */
+  public int getLeaked() {
+    return leaked;
+  }
+
+  /**
+   * Return the number of requests which have been merged with an identical
+   * request in flight.
+   */
+  public int getMerged() {
+    return merged;
+  }
+
+  /**
+   * Return the number of callback slots created so far.
+   */
+  public int getSlots() {
+    return slots.size();
+  }
+
+  public String toString() {
+    return "active=" + getActive() + " leaked=" + leaked + " slots=" + slots.size()
+        + " merged=" + merged;
+  }
+
+  /**
+   * Inject a script requesting the url, the string '=?' in the url is replaced
+   * with the name of the callback.
+   */
+  public void request(Element elem, String url, String charset, Function success,
+      Function error, int timeout) {
+    String key = url + (charset == null ? "" : " " + charset);
+    Call c = pending.get(key);
+    if (c != null) {
+      merged ++;
+      c.add(success, error);
+      return;
+    }
+    int slot = free.isEmpty() ? slots.size() : free.remove(free.size() - 1);
+    c = new Call(slot, seq++, key);
+    c.add(success, error);
+    if (slot == slots.size()) {
+      slots.add(c);
+    } else {
+      slots.set(slot, c);
+    }
+    pending.put(key, c);
+    String name = PREFIX + slot;
+    String src = url.replace("=?", "=" + name);
+    src += (src.contains("?") ? "&" : "?") + "_=" + System.currentTimeMillis();
+    c.script = inject(elem, src, charset, name, slot, c.seq, timeout);
+  }
+
+  private void finish(Call c, Object data, boolean ok) {
+    c.done = true;
+    pending.remove(c.key);
+    for (Function f : ok ? c.onSuccess : c.onError) {
+      if (ok) {
+        f.fe(data);
+      } else {
+        f.fe();
+      }
+    }
+  }
+
+  private void release(Call c) {
+    release(c.script, PREFIX + c.slot);
+    c.script = null;
+    free.add(c.slot);
+  }
+
+  private void onData(int slot, Object data) {
+    Call c = slots.get(slot);
+    if (!c.done) {
+      release(c);
+      finish(c, data, true);
+    }
+  }
+
+  private void onLoad(int slot) {
+    Call c = slots.get(slot);
+    if (c.script == null) {
+      return;
+    }
+    if (c.done) {
+      leaked --;
+      release(c);
+    } else {
+      // the script was loaded but it did not call the callback
+      release(c);
+      finish(c, null, false);
+    }
+  }
+
+  private void onTimeout(int slot, int seq) {
+    Call c = slots.get(slot);
+    if (c.seq == seq && !c.done) {
+      leaked ++;
+      finish(c, null, false);
+    }
+  }
+
+  private native Element inject(Element elem, String url, String charset, String name,
+      int slot, int seq, int timeout) /*-{
+    var r = this;
+    $wnd[name] = $entry(function(data) {
+      r.@com.google.gwt.query.client.plugins.ajax.JsonpRegistry::onData(ILjava/lang/Object;)(slot, data);
+    });
+    if (timeout) {
+      setTimeout($entry(function() {
+        r.@com.google.gwt.query.client.plugins.ajax.JsonpRegistry::onTimeout(II)(slot, seq);
+      }), timeout);
+    }
+    var script = elem.ownerDocument.createElement("script");
+    script.async = "async";
+    if (charset) script.charset = charset;
+    script.src = url;
+    script.onload = script.onerror = script.onreadystatechange = $entry(function() {
+      if (!script.readyState || /loaded|complete/.test(script.readyState)) {
+        script.onload = script.onerror = script.onreadystatechange = null;
+        r.@com.google.gwt.query.client.plugins.ajax.JsonpRegistry::onLoad(I)(slot);
+      }
+    });
+    elem.insertBefore(script, elem.firstChild);
+    return script;
+  }-*/;
+
+  private static native void release(Element script, String name) /*-{
+    try {
+      delete $wnd[name];
+    } catch (e) {
+      // old IE does not allow deleting window properties
+      $wnd[name] = undefined;
+    }
+    if (script && script.parentNode) {
+      script.onload = script.onerror = script.onreadystatechange = null;
+      script.parentNode.removeChild(script);
+    }
+  }-*/;
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.plugins.effects;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.query.client.js.JsObjectArray;
+
+/**
+ * Scheduler shared by all gquery animations.
+ *
+ * Instead of asking the browser for an animation frame per animation, it
+ * requests just one frame and runs in it the callbacks of every active
+ * animation. It stops requesting frames as soon as there are no animations
+ * running.
+ */
+public class AnimationTicker extends AnimationScheduler {
+
+  private class TickerHandle extends AnimationHandle {
+    AnimationCallback callback;
+    // whether the handle is waiting for the next frame
+    boolean queued = true;
+
+    TickerHandle(AnimationCallback callback) {
+      this.callback = callback;
+    }
+
+    public void cancel() {
+      callback = null;
+      if (queued) {
+        queued = false;
+        if (--pending == 0 && frame != null) {
+          frame.cancel();
+          frame = null;
+        }
+      }
+    }
+  }
+
+  private static AnimationTicker instance;
+
+  /**
+   * Return the ticker used by gquery animations.
+   */
+  public static AnimationTicker getInstance() {
+    if (instance == null) {
+      instance = new AnimationTicker();
+    }
+    return instance;
+  }
+
+  private JsObjectArray<TickerHandle> handles = JsObjectArray.create();
+  private AnimationHandle frame;
+  private int pending, lastFrameCallbacks, frames;
+
+  private final AnimationCallback tick = new AnimationCallback() {
+    public void execute(double timestamp) {
+      frame = null;
+      // callbacks normally request the next frame while running
+      JsObjectArray<TickerHandle> current = handles;
+      handles = JsObjectArray.create();
+      pending = 0;
+      for (int i = 0, l = current.length(); i < l; i++) {
+        current.get(i).queued = false;
+      }
+      int count = 0;
+      for (int i = 0, l = current.length(); i < l; i++) {
+        TickerHandle handle = current.get(i);
+        AnimationCallback callback = handle.callback;
+        // skip the callbacks cancelled by the previous ones
+        if (callback != null) {
+          handle.callback = null;
+          callback.execute(timestamp);
+          count ++;
+        }
+      }
+      lastFrameCallbacks = count;
+      frames ++;
+    }
+  };
+
+  protected AnimationTicker() {
+  }
+
+  /**
+   * Return the number of animation callbacks run in the last frame.
+   */
+  public int getCallbacksPerFrame() {
+    return lastFrameCallbacks;
+  }
+
+  /**
+   * Return the number of frames requested to the browser so far.
+   */
+  public int getFrames() {
+    return frames;
+  }
+
+  /**
+   * Return the number of callbacks waiting for the next frame.
+   */
+  public int getPending() {
+    return pending;
+  }
+
+  /**
+   * Return true if the ticker is waiting for a browser frame.
+   */
+  public boolean isRunning() {
+    return frame != null;
+  }
+
+  @Override
+  public AnimationHandle requestAnimationFrame(AnimationCallback callback, Element element) {
+    TickerHandle handle = new TickerHandle(callback);
+    handles.add(handle);
+    pending ++;
+    if (frame == null) {
+      frame = AnimationScheduler.get().requestAnimationFrame(tick);
+    }
+    return handle;
+  }
+}
@@ -1,9 +1,10 @@
 package com.google.gwt.query.client.plugins.effects;
 
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.query.client.GQuery;
 import com.google.gwt.query.client.css.BorderColorProperty;
-import com.google.gwt.query.client.css.RGBColor;
+import com.google.gwt.query.client.impl.DocumentStyleImpl;
 import com.google.gwt.query.client.js.JsNamedArray;
 import com.google.gwt.query.client.js.JsObjectArray;
 import com.google.gwt.query.client.js.JsRegexp;
@@ -36,6 +37,10 @@ public class Fx {
 
       private JsNamedArray<int[]> startColors;
 
+      // resolved in init()
+      private int[][] borderStartColors;
+      private String[] borderStyleNames;
+
       public BorderColorFx(Element e, String endColorString) {
 
         endColor = parseColor(endColorString);
@@ -51,10 +56,32 @@ public class Fx {
 
       @Override
       public void applyValue(GQuery g, double progress) {
-        for (String border : borderColorProperties) {
-          startColor = startColors.get(border);
-          cssprop = border;
-          super.applyValue(g, progress);
+        if (borderStyleNames == null) {
+          for (String border : borderColorProperties) {
+            startColor = startColors.get(border);
+            cssprop = border;
+            super.applyValue(g, progress);
+          }
+          return;
+        }
+        for (int i = 0; i < borderStyleNames.length; i++) {
+          String value = rgb(borderStartColors[i], progress);
+          if (borderStyleNames[i] != null) {
+            element.getStyle().setProperty(borderStyleNames[i], value);
+          } else {
+            g.css(borderColorProperties[i], value);
+          }
+        }
+      }
+
+      @Override
+      public void init(Element e) {
+        element = e;
+        borderStartColors = new int[borderColorProperties.length][];
+        borderStyleNames = new String[borderColorProperties.length];
+        for (int i = 0; i < borderColorProperties.length; i++) {
+          borderStartColors[i] = startColors.get(borderColorProperties[i]);
+          borderStyleNames[i] = getStyleName(e, borderColorProperties[i]);
         }
       }
     }
@@ -132,15 +159,12 @@ public class Fx {
 
     @Override
     public void applyValue(GQuery g, double progress) {
-      int[] result = new int[3];
-      for (int i = 0; i < 3; i++) {
-        int composante = (int) Math.round(startColor[i] + progress
-            * (endColor[i] - startColor[i]));
-        result[i] = Math.max(0, Math.min(255, composante));
+      String value = rgb(startColor, progress);
+      if (styleName != null) {
+        element.getStyle().setProperty(styleName, value);
+      } else {
+        g.css(cssprop, value);
       }
-      String value = RGBColor.rgb(result[0], result[1], result[2]).getCssName();
-
-      g.css(cssprop, value);
     }
 
     public int[] getEndColor() {
@@ -165,6 +189,19 @@ public class Fx {
       return parseLiteralColor(color);
     }
 
+    /**
+     * Compute the color for the progress, without allocating intermediate objects.
+     */
+    protected String rgb(int[] from, double progress) {
+      return "rgb(" + channel(from, 0, progress) + "," + channel(from, 1, progress) + ","
+          + channel(from, 2, progress) + ")";
+    }
+
+    private int channel(int[] from, int i, double progress) {
+      int composante = (int) Math.round(from[i] + progress * (endColor[i] - from[i]));
+      return Math.max(0, Math.min(255, composante));
+    }
+
     private int[] parseHexColor(JsObjectArray<String> matches) {
       assert matches.length() == 2;
       int[] result = new int[3];
@@ -210,6 +247,8 @@ public class Fx {
 
   }
 
+  private static DocumentStyleImpl styleImpl;
+
   public String cssprop;
   public double end;
   public double start;
@@ -217,6 +256,11 @@ public class Fx {
   public String value;
   public String attribute;
 
+  // Resolved once in init(), so as frames are written directly in the element style
+  protected Element element;
+  protected String styleName;
+  private boolean pixels;
+
   Fx() {
     end = start = -1;
   }
@@ -232,8 +276,11 @@ public class Fx {
 
   public void applyValue(GQuery g, double progress) {
     double ret = (start + ((end - start) * progress));
-    String value = ("px".equals(unit) ? ((int) ret) : ret) + unit;
-    if ("scrollTop".equals(cssprop)) {
+    boolean px = element != null ? pixels : "px".equals(unit);
+    String value = (px ? ((int) ret) : ret) + unit;
+    if (styleName != null) {
+      element.getStyle().setProperty(styleName, value);
+    } else if ("scrollTop".equals(cssprop)) {
       g.scrollTop((int)ret);
     } else if ("scrollLeft".equals(cssprop)) {
       g.scrollLeft((int)ret);
@@ -244,6 +291,35 @@ public class Fx {
     }
   }
 
+  /**
+   * Resolve the style property name and the unit of this effect once, when the
+   * animation starts, so as each frame does not need to parse them again.
+   */
+  public void init(Element e) {
+    element = e;
+    pixels = "px".equals(unit);
+    if (attribute == null && !"scrollTop".equals(cssprop) && !"scrollLeft".equals(cssprop)) {
+      styleName = getStyleName(e, cssprop);
+    }
+  }
+
+  /**
+   * Return the name of the property in the element style object, or null if the
+   * property is not there and has to be set through the gquery style implementation
+   * (e.g. opacity in old IE).
+   */
+  static String getStyleName(Element e, String prop) {
+    if (styleImpl == null) {
+      styleImpl = GWT.create(DocumentStyleImpl.class);
+    }
+    String name = styleImpl.getStylePropertyName(prop);
+    return hasStyleProperty(e, name) ? name : null;
+  }
+
+  private static native boolean hasStyleProperty(Element e, String name) /*-{
+    return !!e.style && name in e.style;
+  }-*/;
+
   public String toString() {
     return ("cssprop=" + cssprop + (attribute != null ? " attr=" + attribute : "")
         + " value=" + value + " start=" + start + " end="
@@ -246,6 +246,7 @@ public class PropertiesAnimation extends GQAnimation {
     for (String key : prps.keys()) {
       String val = prps.getStr(key);
       if ((fx = computeFxProp(e, key, val, hidden)) != null) {
+        fx.init(e);
         effects.add(fx);
         resize = resize || "height".equals(key) || "width".equals(key);
         move = move || "top".equals(key) || "left".equals(key);
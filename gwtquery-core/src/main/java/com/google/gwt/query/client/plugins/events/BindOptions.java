@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.plugins.events;
+
+/**
+ * Options used when binding handlers of frequent events like scroll, touchmove or mousemove.
+ *
+ * A passive handler is registered with a passive native listener, so the browser does not wait
+ * for it before scrolling. It can not prevent the default action of the event.
+ *
+ * The delivery of the events can be delayed: once per animation frame, at most once per throttle
+ * period, or when no event has been received during the debounce period. In all cases the handler
+ * receives a copy of the last event, and it can not cancel it because the browser has already
+ * dispatched it. Only one of them is applied, debounce is preferred to throttle and throttle to
+ * frame.
+ *
+ * Ex: $(window).as(Events).bind(new BindOptions().setPassive(true).setFrame(true), "scroll",
+ * null, handler);
+ */
+public class BindOptions {
+
+  private boolean passive;
+  private boolean frame;
+  private int throttle;
+  private int debounce;
+
+  public int getDebounce() {
+    return debounce;
+  }
+
+  public int getThrottle() {
+    return throttle;
+  }
+
+  /**
+   * Return true if the events are delivered later than they were dispatched.
+   */
+  public boolean isDeferred() {
+    return frame || throttle > 0 || debounce > 0;
+  }
+
+  public boolean isFrame() {
+    return frame;
+  }
+
+  public boolean isPassive() {
+    return passive;
+  }
+
+  /**
+   * Call the handler only when no event has been received during the given milliseconds.
+   */
+  public BindOptions setDebounce(int millis) {
+    debounce = millis;
+    return this;
+  }
+
+  /**
+   * Call the handler with the last event received in each animation frame.
+   */
+  public BindOptions setFrame(boolean frame) {
+    this.frame = frame;
+    return this;
+  }
+
+  /**
+   * Register the handler with a passive listener. It is ignored when the handler is bound to
+   * events which can not be passive, like focus or submit.
+   */
+  public BindOptions setPassive(boolean passive) {
+    this.passive = passive;
+    return this;
+  }
+
+  /**
+   * Call the handler at most once every given milliseconds, the first event is delivered
+   * immediately and the last one at the end of the period.
+   */
+  public BindOptions setThrottle(int millis) {
+    throttle = millis;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "passive=" + passive + " frame=" + frame + " throttle=" + throttle + " debounce="
+        + debounce;
+  }
+}
@@ -15,23 +15,32 @@ package com.google.gwt.query.client.plugins.events;
 
 import static com.google.gwt.query.client.GQuery.$;
 
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationHandle;
 import com.google.gwt.core.client.Duration;
 import com.google.gwt.core.client.JsArrayString;
+import com.google.gwt.dom.client.Document;
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.dom.client.EventTarget;
 import com.google.gwt.dom.client.NodeList;
 import com.google.gwt.query.client.Function;
 import com.google.gwt.query.client.GQuery;
+import com.google.gwt.query.client.impl.LruCache;
+import com.google.gwt.query.client.impl.SelectorEngine;
 import com.google.gwt.query.client.js.JsCache;
 import com.google.gwt.query.client.js.JsMap;
 import com.google.gwt.query.client.js.JsNamedArray;
+import com.google.gwt.query.client.js.JsNodeArray;
 import com.google.gwt.query.client.js.JsObjectArray;
 import com.google.gwt.query.client.js.JsUtils;
+import com.google.gwt.query.client.plugins.effects.AnimationTicker;
 import com.google.gwt.user.client.DOM;
 import com.google.gwt.user.client.Event;
 import com.google.gwt.user.client.EventListener;
+import com.google.gwt.user.client.Timer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -115,12 +124,25 @@ public class EventsListener implements EventListener {
   private static class BindFunction {
 
     Object data;
+    // Arguments of the handler, one array per binding so dispatching an
+    // event does not allocate
+    final Object[] args = new Object[1];
     Function function;
     String nameSpace = "";
     // for special event like mouseleave, mouseenter
     String originalEventType;
     int times = -1;
     int type;
+    BindOptions options;
+    // registered in the passive listener
+    boolean passive;
+
+    // Last event received by a deferred handler and not delivered yet
+    GqEvent pending;
+    EventsListener owner;
+    Timer timer;
+    AnimationHandle frame;
+    double last;
 
     BindFunction(int t, String n, String originalEventType, Function f, Object d) {
       type = t;
@@ -140,6 +162,8 @@ public class EventsListener implements EventListener {
     public boolean fire(Event event) {
       if (times != 0) {
         times--;
+        args[0] = data;
+        function.setData(args);
         return function.fe(event, data);
       }
       return true;
@@ -149,6 +173,88 @@ public class EventsListener implements EventListener {
       return (type & etype) != 0;
     }
 
+    boolean isPassive() {
+      return passive;
+    }
+
+    boolean isDeferred() {
+      return options != null && options.isDeferred();
+    }
+
+    /**
+     * Deliver the event according to the options of the handler. Events delivered later are
+     * copied because the browser resets some properties of the event after dispatching it.
+     */
+    boolean defer(Event event, EventsListener listener) {
+      double now = Duration.currentTimeMillis();
+      if (options.getDebounce() <= 0 && options.getThrottle() > 0 && pending == null
+          && now - last >= options.getThrottle()) {
+        last = now;
+        return fire(event);
+      }
+      boolean waiting = pending != null;
+      pending = GqEvent.create(event);
+      pending.setCurrentElementTarget(listener.element);
+      owner = listener;
+      if (!waiting) {
+        listener.pending.add(this);
+      }
+      if (options.getDebounce() > 0) {
+        timer().schedule(options.getDebounce());
+      } else if (options.getThrottle() > 0) {
+        if (!waiting) {
+          timer().schedule((int) Math.max(1, options.getThrottle() - (now - last)));
+        }
+      } else if (frame == null) {
+        frame = AnimationTicker.getInstance().requestAnimationFrame(new AnimationCallback() {
+          public void execute(double timestamp) {
+            frame = null;
+            flush();
+          }
+        }, listener.element);
+      }
+      return true;
+    }
+
+    void flush() {
+      GqEvent e = pending;
+      if (e != null) {
+        cancel();
+        last = Duration.currentTimeMillis();
+        if (type != 0) {
+          fire(e);
+        }
+      }
+    }
+
+    /**
+     * Discard the pending event.
+     */
+    void cancel() {
+      if (pending != null) {
+        pending = null;
+        owner.pending.remove(this);
+      }
+      if (timer != null) {
+        timer.cancel();
+      }
+      if (frame != null) {
+        frame.cancel();
+        frame = null;
+      }
+    }
+
+    private Timer timer() {
+      if (timer == null) {
+        timer = new Timer() {
+          public void run() {
+            flush();
+          }
+        };
+      }
+      return timer;
+    }
+
     /**
      * Remove a set of events. The bind function will not be fire anymore for those events
      *
@@ -191,8 +297,24 @@ public class EventsListener implements EventListener {
 
     JsNamedArray<JsObjectArray<BindFunction>> bindFunctionBySelector;
 
-    LiveBindFunction(int type, String namespace) {
+    // Selectors indexed by the '#id', '.class' or tag name required by
+    // the rightmost part of each selector, so as when an event is dispatched
+    // we only test the selectors which could match each ancestor.
+    JsNamedArray<JsObjectArray<String>> selectorsByKey;
+    // Selectors which can not be indexed and have to be tested against every ancestor
+    JsObjectArray<String> unindexedSelectors;
+    // Registration order of each selector, used to keep the firing order
+    JsCache selectorOrder;
+    // Whether any selector is indexed by class
+    boolean hasClassKeys;
+    boolean indexOutdated;
+    // The document when bound to the delegation root, otherwise the context
+    // is the element whose listener is dispatching the event
+    final Element context;
+
+    LiveBindFunction(int type, String namespace, Element context) {
       super(type, namespace, null, null, -1);
+      this.context = context;
       clean();
     }
 
@@ -204,6 +326,7 @@ public class EventsListener implements EventListener {
       if (bindFunctions == null) {
         bindFunctions = JsObjectArray.create();
         bindFunctionBySelector.put(cssSelector, bindFunctions);
+        indexOutdated = true;
       }
 
       bindFunctions.add(f);
@@ -211,6 +334,7 @@ public class EventsListener implements EventListener {
 
     public void clean() {
       bindFunctionBySelector = JsNamedArray.create();
+      indexOutdated = true;
     }
 
     @Override
@@ -222,28 +346,69 @@ public class EventsListener implements EventListener {
       // first element where the event was fired
       Element eventTarget = getEventTarget(event);
       // last element where the event was dispatched on
-      Element liveContextElement = getCurrentEventTarget(event);
+      Element liveContextElement = context != null ? context : getCurrentEventTarget(event);
 
       if (eventTarget == null || liveContextElement == null) {
         return true;
       }
 
-      // Compute the live selectors which respond to this event type
-      List<String> validSelectors = new ArrayList<String>();
-      for (String cssSelector : bindFunctionBySelector.keys()) {
-        JsObjectArray<BindFunction> bindFunctions = bindFunctionBySelector.get(cssSelector);
-        for (int i = 0; bindFunctions != null && i < bindFunctions.length(); i++) {
-          BindFunction f = bindFunctions.get(i);
-          if (f.hasEventType(event.getTypeInt())) {
-            validSelectors.add(cssSelector);
-            break;
+      if (indexOutdated) {
+        buildIndex();
+      }
+
+      // Create a structure of elements which matches the selectors, traversing
+      // the DOM only once and testing in each ancestor just the candidate selectors.
+      JsNamedArray<NodeList<Element>> realCurrentTargetBySelector = JsNamedArray.create();
+      // memo of the last element tested against each selector in this dispatch
+      JsNamedArray<Element> tested = JsNamedArray.create();
+      // elements matching positional selectors are computed once per dispatch
+      JsNamedArray<GQuery> positional = JsNamedArray.create();
+      SelectorEngine engine = GQuery.getSelectorEngine();
+
+      Element current = eventTarget;
+      while (current != null && current.getOwnerDocument() != null
+          && current != liveContextElement) {
+        JsObjectArray<String> matched = JsObjectArray.create();
+        matchSelectors(unindexedSelectors, current, liveContextElement, engine, tested,
+            positional, matched);
+
+        String id = current.getId();
+        if (id != null && id.length() > 0) {
+          matchSelectors(selectorsByKey.get("#" + id), current, liveContextElement, engine,
+              tested, positional, matched);
+        }
+
+        matchSelectors(selectorsByKey.get(current.getTagName().toLowerCase()), current,
+            liveContextElement, engine, tested, positional, matched);
+
+        String className = hasClassKeys ? current.getClassName() : null;
+        // split by hand, this runs for each ancestor in every event
+        for (int b = 0, l = className == null ? 0 : className.length(); b < l; b++) {
+          int e = b;
+          while (e < l && className.charAt(e) > ' ') {
+            e++;
           }
+          if (e > b) {
+            matchSelectors(selectorsByKey.get("." + className.substring(b, e)), current,
+                liveContextElement, engine, tested, positional, matched);
+          }
+          b = e;
         }
+
+        for (int i = 0, l = matched.length(); i < l; i++) {
+          String cssSelector = matched.get(i);
+          JsNodeArray elementsMatchingSelector = realCurrentTargetBySelector.get(cssSelector)
+              .cast();
+          if (elementsMatchingSelector == null) {
+            elementsMatchingSelector = JsNodeArray.create();
+            realCurrentTargetBySelector.put(cssSelector, elementsMatchingSelector);
+          }
+          elementsMatchingSelector.addNode(current);
+        }
+
+        current = current.getParentElement();
       }
 
-      // Create a structure of elements which matches the selectors
-      JsNamedArray<NodeList<Element>> realCurrentTargetBySelector =
-          $(eventTarget).closest(validSelectors.toArray(new String[0]), liveContextElement);
       // nothing matches the selectors
       if (realCurrentTargetBySelector.length() == 0) {
         return true;
@@ -278,10 +443,78 @@ public class EventsListener implements EventListener {
       return stopElement == null;
     }
 
+    /**
+     * Test the candidate selectors against the element, adding the ones which
+     * match to the matched list, sorted by their registration order.
+     */
+    private void matchSelectors(JsObjectArray<String> candidates, Element e, Element context,
+        SelectorEngine engine, JsNamedArray<Element> tested, JsNamedArray<GQuery> positional,
+        JsObjectArray<String> matched) {
+      for (int i = 0, l = candidates == null ? 0 : candidates.length(); i < l; i++) {
+        String cssSelector = candidates.get(i);
+        // a selector could be in several buckets, test it just once per element
+        if (tested.get(cssSelector) == e) {
+          continue;
+        }
+        tested.put(cssSelector, e);
+
+        boolean match;
+        if (engine.isPositional(cssSelector)) {
+          GQuery pos = positional.get(cssSelector);
+          if (pos == null) {
+            pos = $(cssSelector, context);
+            positional.put(cssSelector, pos);
+          }
+          match = pos.index(e) > -1;
+        } else {
+          match = engine.matches(e, cssSelector);
+        }
+
+        if (match) {
+          int order = selectorOrder.getInt(cssSelector);
+          // JsObjectArray.add(int, T) replaces the element, so we shift them
+          int j = matched.length();
+          while (j > 0 && selectorOrder.getInt(matched.get(j - 1)) > order) {
+            matched.set(j, matched.get(j - 1));
+            j--;
+          }
+          matched.set(j, cssSelector);
+        }
+      }
+    }
+
+    private void buildIndex() {
+      selectorsByKey = JsNamedArray.create();
+      unindexedSelectors = JsObjectArray.create();
+      selectorOrder = JsCache.create();
+      hasClassKeys = false;
+      String[] selectors = bindFunctionBySelector.keys();
+      for (int i = 0; i < selectors.length; i++) {
+        String cssSelector = selectors[i];
+        selectorOrder.putNumber(cssSelector, i);
+        String[] keys = getIndexKeys(cssSelector);
+        if (keys == null) {
+          unindexedSelectors.add(cssSelector);
+        } else {
+          for (String key : keys) {
+            hasClassKeys |= key.startsWith(".");
+            JsObjectArray<String> bucket = selectorsByKey.get(key);
+            if (bucket == null) {
+              bucket = JsObjectArray.create();
+              selectorsByKey.put(key, bucket);
+            }
+            bucket.add(cssSelector);
+          }
+        }
+      }
+      indexOutdated = false;
+    }
+
     /**
      * Remove the BindFunction associated to this cssSelector
      */
     public void removeBindFunctionForSelector(String cssSelector, String nameSpace, String originalEventName) {
+      indexOutdated = true;
       if (nameSpace == null && originalEventName == null) {
         bindFunctionBySelector.delete(cssSelector);
       } else {
@@ -355,6 +588,82 @@ public class EventsListener implements EventListener {
 
   }
 
+  /**
+   * One event of the strings passed to bind, unbind, live and die, like
+   * 'click', 'click.namespace' or a special event like 'mouseenter'.
+   */
+  static class EventSpec {
+    final String eventName;
+    final String nameSpace;
+    // the type of the event when it is not special
+    final int eventType;
+
+    EventSpec(String event) {
+      String eventName = event;
+      String ns = null;
+      //seperate possible namespace
+      //jDramaix: I removed old regex ^([^.]*)\.?(.*$) because it didn't work on IE8...
+      String[] subparts = event.split("\\.", 2);
+      if (subparts.length == 2) {
+        ns = subparts[1];
+        eventName = subparts[0];
+      }
+      this.eventName = eventName;
+      nameSpace = ns;
+      eventType = getTypeInt(eventName);
+    }
+
+    //handle special event like mouseenter or mouseleave, it is looked up each
+    //time so hooks added to special after parsing the string are used
+    SpecialEvent hook() {
+      return special.get(eventName);
+    }
+
+    int type(SpecialEvent hook) {
+      return hook != null ? getTypeInt(hook.getDelegateType()) : eventType;
+    }
+
+    String originalType(SpecialEvent hook) {
+      return hook != null ? hook.getOriginalType() : null;
+    }
+
+    Function handler(SpecialEvent hook, Function function) {
+      return hook != null ? hook.createDelegateHandler(function) : function;
+    }
+  }
+
+  /**
+   * Initial size of the cache of parsed event strings, use
+   * <code>getEventSpecCache().setMaxSize(..)</code> to change it.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 128;
+
+  // Parsed event strings, widgets usually bind and unbind the same ones
+  private static LruCache<String, EventSpec[]> specs = new LruCache<String, EventSpec[]>(DEFAULT_CACHE_SIZE);
+
+  /**
+   * Return the cache of parsed event strings, useful to inspect the hits and
+   * misses counters or to change its size. A size of zero disables it.
+   */
+  public static LruCache<String, ?> getEventSpecCache() {
+    return specs;
+  }
+
+  static EventSpec[] parseEvents(String events) {
+    EventSpec[] ret = specs.getMaxSize() == 0 ? null : specs.get(events);
+    if (ret == null) {
+      String[] parts = events.split("[\\s,]+");
+      ret = new EventSpec[parts.length];
+      for (int i = 0; i < parts.length; i++) {
+        ret[i] = new EventSpec(parts[i]);
+      }
+      if (specs.getMaxSize() > 0) {
+        specs.put(events, ret);
+      }
+    }
+    return ret;
+  }
+
   public static int ONSUBMIT = GqEvent.ONSUBMIT;
   public static int ONRESIZE = GqEvent.ONRESIZE;
   public static String MOUSEENTER = "mouseenter";
@@ -380,20 +689,61 @@ public class EventsListener implements EventListener {
     return ret != null ? ret : new EventsListener(e);
   }
 
+  // Listener of the live handlers bound without a context element
+  private static EventsListener root;
+
+  /**
+   * Return the delegation root: the listener of the live handlers bound without a context
+   * element. It registers in the document one native listener per event type, so neither the
+   * document nor the elements matching the selectors need a gwt listener or any expando.
+   */
+  public static EventsListener getRootInstance() {
+    if (root == null) {
+      root = new EventsListener();
+    }
+    return root;
+  }
+
   public static void rebind(Element e) {
     EventsListener ret = getGQueryEventListener(e);
     if (ret != null && ret.eventBits != 0) {
       ret.sink();
     }
+    if (ret != null && ret.passiveBits != 0) {
+      ret.sinkPassive();
+    }
   }
 
   private static native void cleanGQListeners(Element elem) /*-{
 		if (elem.__gwtlistener) {
       @com.google.gwt.user.client.DOM::setEventListener(*)(elem, elem.__gwtlistener);
 		}
+		for (var k in elem.__gquery) {
+			var h = elem.__gquery[k], name = k.replace(/^passive:/, "");
+			if (typeof h != "function")
+				continue;
+			if (elem.removeEventListener)
+				elem.removeEventListener(name, h, name == k);
+			else
+				elem.detachEvent("on" + name, h);
+		}
 		elem.__gwtlistener = elem.__gqueryevent = elem.__gquery = null;
   }-*/;
 
+  // Listeners of the delegation root run in the bubbling phase, after the handlers of the
+  // elements, except for events which don't bubble. They are never removed, undelegating
+  // empties the live handlers they dispatch to.
+  private static native void addDocumentListener(Element doc, String name, boolean capture,
+      EventsListener l) /*-{
+		var handle = $entry(function(event) {
+			l.@com.google.gwt.query.client.plugins.events.EventsListener::dispatchEvent(Lcom/google/gwt/user/client/Event;Z)(event, false);
+		});
+		if (doc.addEventListener)
+			doc.addEventListener(name, handle, capture);
+		else
+			doc.attachEvent("on" + name, handle);
+  }-*/;
+
   private static native EventsListener getGQueryEventListener(Element elem) /*-{
 		return elem.__gqueryevent;
   }-*/;
@@ -402,30 +752,137 @@ public class EventsListener implements EventListener {
 		return elem.__gwtlistener;
   }-*/;
 
+  /**
+   * Return the keys used to index a live selector: the '#id', the '.class' or
+   * the lower-cased tag name required by the rightmost part of each comma
+   * separated selector, or null if any of them can not be indexed.
+   */
+  static String[] getIndexKeys(String selector) {
+    if (selector == null || selector.startsWith("/") || selector.startsWith("./")) {
+      return null;
+    }
+    List<String> keys = new ArrayList<String>();
+    int depth = 0, start = 0;
+    for (int i = 0, l = selector.length(); i <= l; i++) {
+      char c = i < l ? selector.charAt(i) : ',';
+      if (c == '(' || c == '[') {
+        depth++;
+      } else if (c == ')' || c == ']') {
+        depth--;
+      } else if (c == '\\' || c == '"' || c == '\'') {
+        // we don't parse escaped or quoted text
+        return null;
+      } else if (c == ',' && depth == 0) {
+        String key = getIndexKey(selector.substring(start, i).trim());
+        if (key == null) {
+          return null;
+        }
+        keys.add(key);
+        start = i + 1;
+      }
+    }
+    return keys.toArray(new String[keys.size()]);
+  }
+
+  private static String getIndexKey(String selector) {
+    // look for the beginning of the rightmost compound selector
+    int depth = 0, start = 0, l = selector.length();
+    for (int i = 0; i < l; i++) {
+      char c = selector.charAt(i);
+      if (c == '(' || c == '[') {
+        depth++;
+      } else if (c == ')' || c == ']') {
+        depth--;
+      } else if (depth == 0 && (c == '>' || c == '+' || c == '~' || c <= ' ')) {
+        start = i + 1;
+      }
+    }
+
+    String id = null, clazz = null, tag = null;
+    depth = 0;
+    for (int i = start; i < l; i++) {
+      char c = selector.charAt(i);
+      if (c == '(' || c == '[') {
+        depth++;
+      } else if (c == ')' || c == ']') {
+        depth--;
+      } else if (depth == 0 && (c == '#' || c == '.' || i == start)) {
+        int j = c == '#' || c == '.' ? i + 1 : i;
+        int k = j;
+        while (k < l && isIdentifierChar(selector.charAt(k))) {
+          k++;
+        }
+        if (k > j) {
+          String name = selector.substring(j, k);
+          if (c == '#') {
+            id = "#" + name;
+          } else if (c == '.') {
+            clazz = clazz == null ? "." + name : clazz;
+          } else {
+            tag = name.toLowerCase();
+          }
+          i = k - 1;
+        }
+      }
+    }
+    return id != null ? id : clazz != null ? clazz : tag;
+  }
+
+  private static boolean isIdentifierChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c > 127;
+  }
+
   private static native void init(Element elem, EventsListener gqevent)/*-{
 		elem.__gwtlistener = @com.google.gwt.user.client.DOM::getEventListener(*)(elem);
 		elem.__gqueryevent = gqevent;
   }-*/;
 
-  // Gwt does't handle submit nor resize events in DOM.sinkEvents
-  private static native void sinkEvent(Element elem, String name) /*-{
+  // Gwt does't handle submit nor resize events in DOM.sinkEvents, nor passive listeners
+  private static native void sinkEvent(Element elem, String name, boolean passive) /*-{
+		var key = passive ? "passive:" + name : name;
 		if (!elem.__gquery)
 			elem.__gquery = [];
-		if (elem.__gquery[name])
+		if (elem.__gquery[key])
 			return;
-		elem.__gquery[name] = true;
 
 		var handle = function(event) {
-			elem.__gqueryevent.@com.google.gwt.query.client.plugins.events.EventsListener::dispatchEvent(Lcom/google/gwt/user/client/Event;)(event);
+			var l = elem.__gqueryevent;
+			if (l)
+				l.@com.google.gwt.query.client.plugins.events.EventsListener::dispatchEvent(Lcom/google/gwt/user/client/Event;Z)(event, passive);
 		};
+		elem.__gquery[key] = handle;
 
 		if (elem.addEventListener)
-			elem.addEventListener(name, handle, true);
+			// passive listeners bubble, so they run in the same order as the gwt ones
+			elem.addEventListener(name, handle, passive ? {capture: false, passive: true} : true);
 		else
 			elem.attachEvent("on" + name, handle);
   }-*/;
 
+  // Events which can be bound to passive listeners
+  private static final String[] PASSIVE_TYPES = {"scroll", "mousewheel", "DOMMouseScroll",
+      "touchstart", "touchmove", "touchend", "touchcancel", "mousemove", "mouseover", "mouseout",
+      "mousedown", "mouseup", "gesturestart", "gesturechange", "gestureend"};
+
+  // Events which can be delegated to the document
+  private static final String[] DOCUMENT_TYPES = {"blur", "change", "click", "dblclick", "error",
+      "focus", "keydown", "keypress", "keyup", "load", "losecapture", "mousedown", "mousemove",
+      "mouseout", "mouseover", "mouseup", "scroll", "mousewheel", "DOMMouseScroll",
+      "contextmenu", "paste", "touchstart", "touchmove", "touchend", "touchcancel",
+      "gesturestart", "gesturechange", "gestureend", "submit", "resize"};
+
+  // Events which don't reach the document in the bubbling phase
+  private static final List<String> NON_BUBBLING_TYPES = Arrays.asList("blur", "focus", "load",
+      "error", "scroll", "resize");
+
+  // Event bits of PASSIVE_TYPES
+  private static int passiveTypeBits;
+
   int eventBits = 0;
+  // Events with passive handlers, they are not sunk in gwt
+  int passiveBits = 0;
+  // Events with a native listener in the document, only used by the delegation root
+  int rootBits = 0;
   double lastEvnt = 0;
 
   int lastType = 0;
@@ -434,13 +891,26 @@ public class EventsListener implements EventListener {
 
   private JsObjectArray<BindFunction> elementEvents = JsObjectArray.createArray().cast();
 
+  // Handlers of each event type, in the order they were bound. The arrays are
+  // built when an event of that type is dispatched and never modified, any
+  // change in the handlers discards them, so a handler can bind or unbind
+  // while an event is being dispatched.
+  private JsMap<Integer, JsObjectArray<BindFunction>> handlersByType = JsMap.create();
+
   private JsMap<Integer, LiveBindFunction> liveBindFunctionByEventType = JsMap.create();
 
+  // Deferred handlers with an event waiting to be delivered
+  private List<BindFunction> pending = new ArrayList<BindFunction>();
+
   private EventsListener(Element element) {
     this.element = element;
     init(element, this);
   }
 
+  private EventsListener() {
+    element = Document.get().cast();
+  }
+
   public void bind(int eventbits, final Object data, Function... funcs) {
     bind(eventbits, null, data, funcs);
   }
@@ -457,74 +927,60 @@ public class EventsListener implements EventListener {
 
   public void bind(int eventbits, String namespace, String originalEventType, final Object data,
       final Function function, int times) {
+    bind(eventbits, namespace, originalEventType, data, function, times, null);
+  }
+
+  public void bind(int eventbits, String namespace, String originalEventType, final Object data,
+      final Function function, int times, BindOptions options) {
     if (function == null) {
       unbind(eventbits, namespace, originalEventType, null);
       return;
     }
-    eventBits |= eventbits;
-    sink();
-    elementEvents.add(new BindFunction(eventbits, namespace, originalEventType, function, data,
-        times));
+    BindFunction f = new BindFunction(eventbits, namespace, originalEventType, function, data,
+        times);
+    f.options = options;
+    // events without a passive listener fall back to the gwt one
+    if (passiveTypeBits == 0) {
+      passiveTypeBits = getEventBits(PASSIVE_TYPES);
+    }
+    f.passive = options != null && options.isPassive() && (eventbits & ~passiveTypeBits) == 0;
+    if (f.isPassive()) {
+      passiveBits |= eventbits;
+      sinkPassive();
+    } else {
+      eventBits |= eventbits;
+      sink();
+    }
+    elementEvents.add(f);
+    handlersByType = JsMap.create();
   }
 
-  public void bind(String events, final Object data, Function... funcs) {
-    String[] parts = events.split("[\\s,]+");
-
-    for (String event : parts) {
-
-      String nameSpace = null;
-      String eventName = event;
-
-      //seperate possible namespace
-      //jDramaix: I removed old regex ^([^.]*)\.?(.*$) because it didn't work on IE8...
-      String[] subparts = event.split("\\.", 2);
-
-      if (subparts.length == 2){
-        nameSpace = subparts[1];
-        eventName = subparts[0];
-      }
+  public void bind(BindOptions options, int eventbits, String namespace, Object data,
+      Function... funcs) {
+    for (Function function : funcs) {
+      bind(eventbits, namespace, null, data, function, -1, options);
+    }
+  }
 
-      //handle special event like mouseenter or mouseleave
-      SpecialEvent hook = special.get(eventName);
-      eventName = hook != null ? hook.getDelegateType() : eventName;
-      String originalEventName = hook != null ? hook.getOriginalType() : null;
+  public void bind(String events, final Object data, Function... funcs) {
+    bind(null, events, data, funcs);
+  }
 
-      int b = getTypeInt(eventName);
+  public void bind(BindOptions options, String events, Object data, Function... funcs) {
+    for (EventSpec spec : parseEvents(events)) {
+      SpecialEvent hook = spec.hook();
       for (Function function : funcs) {
-        Function handler = hook != null ? hook.createDelegateHandler(function) : function;
-        bind(b, nameSpace, originalEventName, data, handler, -1);
+        bind(spec.type(hook), spec.nameSpace, spec.originalType(hook), data,
+            spec.handler(hook, function), -1, options);
       }
     }
   }
 
   public void die(String eventNames, String cssSelector) {
-    String[] parts = eventNames.split("[\\s,]+");
-
-    for (String event : parts) {
-      String nameSpace = null;
-      String eventName = event;
-
-      //seperate possible namespace
-      //jDramaix: I removed old regex ^([^.]*)\.?(.*$) because it didn't work on IE8...
-      String[] subparts = event.split("\\.", 2);
-
-      if (subparts.length == 2) {
-        nameSpace = subparts[1];
-        eventName = subparts[0];
-      }
-
-
-      //handle special event like mouseenter or mouseleave
-      SpecialEvent hook = special.get(eventName);
-      eventName = hook != null ? hook.getDelegateType() : eventName;
-      String originalEventName = hook != null ? hook.getOriginalType() : null;
-
-      int b = getTypeInt(eventName);
-
-      die(b, nameSpace, originalEventName, cssSelector);
+    for (EventSpec spec : parseEvents(eventNames)) {
+      SpecialEvent hook = spec.hook();
+      die(spec.type(hook), spec.nameSpace, spec.originalType(hook), cssSelector);
     }
-
-
   }
 
   public void die(int eventbits, String nameSpace, String originalEventName,String cssSelector) {
@@ -541,24 +997,47 @@ public class EventsListener implements EventListener {
       if (liveBindFunction != null) {
         liveBindFunction.removeBindFunctionForSelector(cssSelector, nameSpace, originalEventName);
       }
-      if (liveBindFunction.isEmpty()){
+      if (liveBindFunction != null && liveBindFunction.isEmpty()){
         liveBindFunctionByEventType.remove(eventbits);
       }
     }
   }
 
   public void dispatchEvent(Event event) {
+    dispatchEvent(event, false);
+  }
+
+  /**
+   * Dispatch the event to the handlers registered in the gwt listener or, when passive is true,
+   * to the ones registered in the passive listener.
+   */
+  private void dispatchEvent(Event event, boolean passive) {
     int etype = getTypeInt(event.getType());
+
     String originalEventType = GqEvent.getOriginalEventType(event);
 
-    for (int i = 0, l = elementEvents.length(); i < l; i++) {
-      BindFunction listener = elementEvents.get(i);
-      if (listener.hasEventType(etype)
+    JsObjectArray<BindFunction> handlers = handlersByType.get(etype);
+    if (handlers == null) {
+      handlers = JsObjectArray.create();
+      for (int i = 0, l = elementEvents.length(); i < l; i++) {
+        if (elementEvents.get(i).hasEventType(etype)) {
+          handlers.add(elementEvents.get(i));
+        }
+      }
+      handlersByType.put(etype, handlers);
+    }
+
+    for (int i = 0, l = handlers.length(); i < l; i++) {
+      BindFunction listener = handlers.get(i);
+      if (listener.hasEventType(etype) && listener.isPassive() == passive
           && (originalEventType == null || originalEventType
               .equals(listener.getOriginalEventType()))) {
-        if (!listener.fire(event)) {
+        boolean ret = listener.isDeferred() ? listener.defer(event, this) : listener.fire(event);
+        if (!ret) {
           event.stopPropagation();
-          event.preventDefault();
+          if (!passive) {
+            event.preventDefault();
+          }
         }
       }
     }
@@ -573,31 +1052,11 @@ public class EventsListener implements EventListener {
   }
 
   public void live(String events, String cssSelector, Object data, Function... funcs) {
-
-    String[] parts = events.split("[\\s,]+");
-
-    for (String event : parts) {
-
-      String nameSpace = null;
-      String eventName = event;
-
-
-      String[] subparts = event.split("\\.", 2);
-
-      if (subparts.length == 2) {
-        nameSpace = subparts[1];
-        eventName = subparts[0];
-      }
-
-      //handle special event like mouseenter or mouseleave
-      SpecialEvent hook = special.get(eventName);
-      eventName = hook != null ? hook.getDelegateType() : eventName;
-      String originalEventName = hook != null ? hook.getOriginalType() : null;
-
-      int b = getTypeInt(eventName);
+    for (EventSpec spec : parseEvents(events)) {
+      SpecialEvent hook = spec.hook();
       for (Function function : funcs) {
-        Function handler = hook != null ? hook.createDelegateHandler(function) : function;
-        live(b, nameSpace, originalEventName, cssSelector, data, handler);
+        live(spec.type(hook), spec.nameSpace, spec.originalType(hook), cssSelector, data,
+            spec.handler(hook, function));
       }
     }
   }
@@ -610,10 +1069,11 @@ public class EventsListener implements EventListener {
         // is a LiveBindFunction already attached for this kind of event
         LiveBindFunction liveBindFunction = liveBindFunctionByEventType.get(event);
         if (liveBindFunction == null) {
-          liveBindFunction = new LiveBindFunction(event, "live");
+          liveBindFunction = new LiveBindFunction(event, "live", this == root ? element : null);
           eventBits |= event;
           sink();
           elementEvents.add(liveBindFunction);
+          handlersByType = JsMap.create();
           liveBindFunctionByEventType.put(event, liveBindFunction);
         }
 
@@ -648,8 +1108,10 @@ public class EventsListener implements EventListener {
   }
 
   public void unbind(int eventbits, String namespace, String originalEventType, Function f) {
-    JsObjectArray<BindFunction> newList = JsObjectArray.createArray().cast();
-    for (int i = 0; i < elementEvents.length(); i++) {
+    // the array is copied only when a handler has to be removed
+    JsObjectArray<BindFunction> newList = null;
+    boolean changed = false;
+    for (int i = 0, l = elementEvents.length(); i < l; i++) {
       BindFunction listener = elementEvents.get(i);
 
       boolean matchNS =
@@ -662,61 +1124,62 @@ public class EventsListener implements EventListener {
       boolean matchFC = f == null || listener.isEquals(f);
 
       if (matchNS && matchEV && matchFC && matchOEVT) {
+        changed = true;
         int currentEventbits = listener.unsink(eventbits);
 
         if (currentEventbits == 0) {
           // the BindFunction doesn't listen anymore on any events
+          listener.cancel();
+          if (newList == null) {
+            newList = JsObjectArray.create();
+            for (int j = 0; j < i; j++) {
+              newList.add(elementEvents.get(j));
+            }
+          }
           continue;
         }
       }
 
-      newList.add(listener);
+      if (newList != null) {
+        newList.add(listener);
+      }
+    }
+    if (newList != null) {
+      elementEvents = newList;
+    }
+    if (changed) {
+      handlersByType = JsMap.create();
     }
-    elementEvents = newList;
-
   }
 
   public void unbind(String events, Function f) {
-
-    String[] parts = events.split("[\\s,]+");
-
-    for (String event : parts) {
-      String nameSpace = null;
-      String eventName = event;
-
-      //seperate possible namespace
-      //jDramaix: I removed old regex ^([^.]*)\.?(.*$) because it didn't work on IE8...
-      String[] subparts = event.split("\\.", 2);
-
-      if (subparts.length == 2){
-        nameSpace = subparts[1];
-        eventName = subparts[0];
-      }
-
-      //handle special event
-      SpecialEvent hook = special.get(eventName);
-      eventName = hook != null ? hook.getDelegateType() : eventName;
-      String originalEventName = hook != null ? hook.getOriginalType() : null;
-
-      int b = getTypeInt(eventName);
-
-      unbind(b, nameSpace, originalEventName, f);
+    for (EventSpec spec : parseEvents(events)) {
+      SpecialEvent hook = spec.hook();
+      unbind(spec.type(hook), spec.nameSpace, spec.originalType(hook), f);
     }
   }
 
   private void clean() {
     cleanGQListeners(element);
+    for (BindFunction f : new ArrayList<BindFunction>(pending)) {
+      f.cancel();
+    }
     elementEvents = JsObjectArray.createArray().cast();
+    handlersByType = JsMap.create();
     liveBindFunctionByEventType = JsMap.create();
   }
 
   private void sink() {
+    if (this == root) {
+      sinkRoot();
+      return;
+    }
     // ensure that the gwtQuery's event listener is set as event listener of the element
     DOM.setEventListener((com.google.gwt.user.client.Element) element, this);
     if (eventBits == ONSUBMIT) {
-      sinkEvent(element, "submit");
+      sinkEvent(element, "submit", false);
     } else if ((eventBits | ONRESIZE) == ONRESIZE) {
-      sinkEvent(element, "resize");
+      sinkEvent(element, "resize", false);
     } else {
       if ((eventBits | Event.FOCUSEVENTS) == Event.FOCUSEVENTS 
           && JsUtils.isElement(element)
@@ -729,6 +1192,25 @@ public class EventsListener implements EventListener {
     }
   }
 
+  private void sinkRoot() {
+    for (String name : DOCUMENT_TYPES) {
+      int type = getTypeInt(name);
+      if (type > 0 && (eventBits & type) != 0 && (rootBits & type) == 0) {
+        addDocumentListener(element, name, NON_BUBBLING_TYPES.contains(name), this);
+      }
+    }
+    // updated after the loop, mousewheel and DOMMouseScroll share the type
+    rootBits |= eventBits;
+  }
+
+  private void sinkPassive() {
+    for (String name : PASSIVE_TYPES) {
+      if ((passiveBits & getTypeInt(name)) != 0) {
+        sinkEvent(element, name, true);
+      }
+    }
+  }
+
   private int getEventBits(String... events) {
     int ret = 0;
     for (String e : events) {
@@ -744,7 +1226,7 @@ public class EventsListener implements EventListener {
     return ret;
   }
 
-  private int getTypeInt(String eventName) {
+  private static int getTypeInt(String eventName) {
     return "submit".equals(eventName) ? ONSUBMIT : "resize".equals(eventName) ? ONRESIZE : Event
         .getTypeInt(eventName);
   }
@@ -754,6 +1236,11 @@ public class EventsListener implements EventListener {
       LiveBindFunction function = liveBindFunctionByEventType.<JsCache> cast().get(k);
       function.clean();
     }
+    // live handlers bound without a context used to be in the body listener
+    if (this != root && root != null && (element == Document.get().cast()
+        || element == Document.get().getBody().cast())) {
+      root.cleanEventDelegation();
+    }
   }
 
 }
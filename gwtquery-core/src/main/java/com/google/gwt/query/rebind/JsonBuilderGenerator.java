@@ -40,6 +40,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  */
@@ -67,6 +68,9 @@ public class JsonBuilderGenerator extends Generator {
 
   TypeOracle oracle;
 
+  // Typed JSNI accessors used by the class being generated
+  Set<String> accessors = new TreeSet<String>();
+
   public String generate(TreeLogger treeLogger,
       GeneratorContext generatorContext, String requestedClass)
       throws UnableToCompleteException {
@@ -83,6 +87,7 @@ public class JsonBuilderGenerator extends Generator {
     SourceWriter sw = getSourceWriter(treeLogger, generatorContext, t[0], t[1],
         requestedClass);
     if (sw != null) {
+      accessors.clear();
       Set<String> attrs = new HashSet<String>();
       for (JMethod method : clazz.getInheritableMethods()) {
         String methName = method.getName();
@@ -101,11 +106,46 @@ public class JsonBuilderGenerator extends Generator {
       }
       generateFieldNamesMethod(sw, attrs, treeLogger);
       generateToJsonMethod(sw, t[3], treeLogger);
+      generateAccessors(sw);
       sw.commit(treeLogger);
     }
     return t[2];
   }
 
+  /**
+   * Write the JSNI accessors used by the generated methods, they read the
+   * value with a single js expression instead of the conversions done by
+   * Properties getters.
+   */
+  public void generateAccessors(SourceWriter sw) {
+    for (String a : accessors) {
+      boolean index = a.endsWith("At");
+      String kind = a.replaceFirst("^js(.*?)(At)?$", "$1");
+      String ret = "Int".equals(kind) ? "int" : "Number".equals(kind) ? "double"
+          : "Boolean".equals(kind) ? "boolean" : "String".equals(kind) ? "String"
+          : "JavaScriptObject";
+      sw.println("private static native " + ret + " " + a + "(JavaScriptObject o, "
+          + (index ? "int" : "String") + " k) /*-{");
+      if ("Int".equals(kind)) {
+        // same result as the java (int) cast of a double: NaN is 0 and
+        // values out of range saturate instead of wrapping like v | 0
+        sw.println("  var v = +o[k];");
+        sw.println("  return v >= 2147483647 ? 2147483647 : v <= -2147483648 ? -2147483648 : v | 0;");
+      } else if ("Number".equals(kind)) {
+        sw.println("  return +o[k] || 0;");
+      } else if ("Boolean".equals(kind)) {
+        sw.println("  var v = o[k];");
+        sw.println("  return typeof v == 'boolean' ? v : 'true' == String(v);");
+      } else if ("String".equals(kind)) {
+        sw.println("  var v = o[k];");
+        sw.println("  return v == null ? null : String(v);");
+      } else {
+        sw.println("  return o[k] || null;");
+      }
+      sw.println("}-*/;");
+    }
+  }
+
   public String[] generateClassName(JType t) {
     String[] ret = new String[4];
     JClassType c = t.isClassOrInterface();
@@ -137,28 +177,11 @@ public class JsonBuilderGenerator extends Generator {
 
       sw.println("() {");
       sw.indent();
-      if (retType.matches("(java.lang.Boolean|boolean)")) {
-        sw.println("return p.getBoolean(\"" + name + "\");");
-      } else if (retType.matches("java.util.Date")) {
+      String read = typedRead(method.getReturnType(), "p", "\"" + name + "\"", false);
+      if (retType.matches("java.util.Date")) {
         sw.println("return new Date(java.lang.Long.parseLong(p.getStr(\"" + name + "\")));");
-      } else if (method.getReturnType().isPrimitive() != null) {
-        sw.println("return (" + retType + ")p.getFloat(\"" + name + "\");");
-      } else if (retType.equals("java.lang.Character")) {
-        sw.println("return (char) p.getFloat(\"" + name + "\");");
-      } else if (retType.equals("java.lang.Byte")) {
-        sw.println("return (byte) p.getFloat(\"" + name + "\");");
-      } else if (retType.equals("java.lang.Integer")) {
-    	  sw.println("return (int) p.getFloat(\"" + name + "\");");
-      } else if (retType.equals("java.lang.Float")) {
-    	  sw.println("return p.getFloat(\"" + name + "\");");
-      } else if (retType.equals("java.lang.Double")) {
-    	  sw.println("return (double) p.getFloat(\"" + name + "\");");
-      } else if (retType.equals("java.lang.Long")) {
-    	  sw.println("return (long) p.getFloat(\"" + name + "\");");
-      } else if (retType.equals("java.lang.Byte")) {
-    	  sw.println("return (byte) p.getFloat(\"" + name + "\");");
-      } else if (isTypeAssignableTo(method.getReturnType(), stringType)) {
-        sw.println("return p.getStr(\"" + name + "\");");
+      } else if (read != null) {
+        sw.println("return " + read + ";");
       } else if (isTypeAssignableTo(method.getReturnType(), jsonBuilderType)) {
         String q = method.getReturnType().getQualifiedSourceName();
         sw.println("return " + "((" + q + ")GWT.create(" + q + ".class))"
@@ -174,9 +197,21 @@ public class JsonBuilderGenerator extends Generator {
             : list.getTypeArgs()[0];
         boolean buildType = isTypeAssignableTo(type, jsonBuilderType);
         String t = type.getQualifiedSourceName();
+        String ret, readAt = typedRead(type, "a", "i", true);
+        if (readAt == null && isTypeAssignableTo(type, jsType)) {
+          accessors.add("jsObjectAt");
+          readAt = "(" + t + ") jsObjectAt(a, i)";
+        }
+        if (list != null && (buildType || readAt != null)) {
+          String field = method.getName() + "List";
+          generateListView(sw, name, field, type, buildType, readAt);
+          sw.outdent();
+          sw.println("}");
+          sw.println("private JsonBuilderList<" + t + "> " + field + ";");
+          return;
+        }
         sw.println("JsArrayMixed a = p.getArray(\"" + name + "\");");
         sw.println("int l = a == null ? 0 : a.length();");
-        String ret;
         if (buildType) {
           sw.println(t + "[] r = new " + t + "[l];");
           sw.println("JsObjectArray<?> a1 = p.getArray(\"" + name
@@ -188,6 +223,12 @@ public class JsonBuilderGenerator extends Generator {
           sw.println("  r[i] = instance.load(w);");
           sw.println("}");
           ret = "r";
+        } else if (readAt != null) {
+          sw.println(t + "[] r = new " + t + "[l];");
+          sw.println("for (int i = 0 ; i < l ; i++) {");
+          sw.println("  r[i] = " + readAt + ";");
+          sw.println("}");
+          ret = "r";
         } else {
           ret = "getArrayBase(\"" + name + "\", new " + t + "[l], " + t + ".class)";
         }
@@ -214,7 +255,13 @@ public class JsonBuilderGenerator extends Generator {
       sw.print("(" + type.getParameterizedQualifiedSourceName() + " a)");
       sw.println("{");
       sw.indent();
-      if (arr != null || list != null) {
+      if (arr != null && arr.getComponentType().isPrimitive() != null) {
+        sw.println("JsArrayMixed x = JavaScriptObject.createArray().cast();");
+        sw.println("for (int i = 0 ; i < a.length ; i++) {");
+        sw.println("  x.push(a[i]);");
+        sw.println("}");
+        sw.println("p.set(\"" + name + "\", x);");
+      } else if (arr != null || list != null) {
         String a = "a";
         if (list != null) {
           a = "a.toArray(new " + list.getTypeArgs()[0].getQualifiedSourceName()
@@ -247,6 +294,42 @@ public class JsonBuilderGenerator extends Generator {
     }
   }
 
+  /**
+   * Write a list which reads and writes the elements in the js array of the
+   * property instead of copying them. The list is kept in the field until the
+   * builder is loaded with other properties, so the wrappers are reused.
+   */
+  public void generateListView(SourceWriter sw, String name, String field, JType type,
+      boolean buildType, String readAt) {
+    String t = type.getQualifiedSourceName();
+    String write;
+    if (buildType) {
+      accessors.add("jsObjectAt");
+      readAt = "((" + t + ")GWT.create(" + t + ".class)).load(jsObjectAt(a, i))";
+      write = "if (v == null) setNull(a, i); else a.set(i, v.getProperties());";
+    } else if (isTypeAssignableTo(type, jsType) || isTypeAssignableTo(type, stringType)) {
+      write = "a.set(i, v);";
+    } else {
+      write = "if (v == null) setNull(a, i); else a.set(i, v);";
+    }
+    sw.println("if (" + field + " == null || " + field + ".getProperties() != p) {");
+    sw.indent();
+    sw.println(field + " = new JsonBuilderList<" + t + ">(p, \"" + name + "\", " + buildType
+        + ") {");
+    sw.indent();
+    sw.println("protected " + t + " read(JsArrayMixed a, int i) {");
+    sw.println("  return " + readAt + ";");
+    sw.println("}");
+    sw.println("protected void write(JsArrayMixed a, int i, " + t + " v) {");
+    sw.println("  " + write);
+    sw.println("}");
+    sw.outdent();
+    sw.println("};");
+    sw.outdent();
+    sw.println("}");
+    sw.println("return " + field + ";");
+  }
+
   public void generateToJsonMethod(SourceWriter sw, String name, TreeLogger logger) {
     sw.println("public final String getJsonName() {return \"" + name + "\";}");
     sw.println("public final String toJson() {return \"{\\\"\" + getJsonName() + \"\\\":\" + toString() + \"}\";}");
@@ -265,6 +348,7 @@ public class JsonBuilderGenerator extends Generator {
         + packageName + "." + className + ">");
     composerFactory.addImport("com.google.gwt.query.client.js.*");
     composerFactory.addImport("com.google.gwt.query.client.*");
+    composerFactory.addImport("com.google.gwt.query.client.builders.JsonBuilderList");
     composerFactory.addImport("com.google.gwt.core.client.*");
     composerFactory.addImport("com.google.gwt.dom.client.*");
     composerFactory.addImport("java.util.*");
@@ -275,6 +359,35 @@ public class JsonBuilderGenerator extends Generator {
     return composerFactory.createSourceWriter(context, printWriter);
   }
 
+  /**
+   * Return an expression which reads a primitive, a boxed primitive or a
+   * string using a typed accessor, or null for other types.
+   */
+  public String typedRead(JType type, String obj, String key, boolean index) {
+    String t = type.getQualifiedSourceName().replaceFirst("^java\\.lang\\.", "");
+    String kind, cast = "";
+    if (t.matches("int|Integer")) {
+      kind = "Int";
+    } else if (t.matches("short|Short|byte|Byte|char|Character")) {
+      kind = "Int";
+      cast = "(" + t.toLowerCase().replace("character", "char") + ") ";
+    } else if (t.matches("long|Long|float|Float")) {
+      kind = "Number";
+      cast = "(" + t.toLowerCase() + ") ";
+    } else if (t.matches("double|Double")) {
+      kind = "Number";
+    } else if (t.matches("boolean|Boolean")) {
+      kind = "Boolean";
+    } else if (t.equals("String")) {
+      kind = "String";
+    } else {
+      return null;
+    }
+    String fn = "js" + kind + (index ? "At" : "");
+    accessors.add(fn);
+    return cast + fn + "(" + obj + ", " + key + ")";
+  }
+
   public boolean isTypeAssignableTo(JType t, JClassType o) {
     JClassType c = t.isClassOrInterface();
     return (c != null && c.isAssignableTo(o));
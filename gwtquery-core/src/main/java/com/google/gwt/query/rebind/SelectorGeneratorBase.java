@@ -135,7 +135,7 @@ public abstract class SelectorGeneratorBase extends Generator {
     }
     ClassSourceFileComposerFactory composerFactory = new ClassSourceFileComposerFactory(
         packageName, className);
-    composerFactory.setSuperclass("com.google.gwt.query.client.impl.SelectorEngine");
+    composerFactory.setSuperclass(getSuperclass());
     composerFactory.addImport("com.google.gwt.query.client.impl.*");
     composerFactory.addImport("com.google.gwt.query.client.js.*");
     composerFactory.addImport("com.google.gwt.query.client.Selectors.*");
@@ -149,6 +149,14 @@ public abstract class SelectorGeneratorBase extends Generator {
     return composerFactory.createSourceWriter(context, printWriter);
   }
 
+  /**
+   * The class generated implementations extend, generators which emit calls
+   * to their own helpers should override it.
+   */
+  protected String getSuperclass() {
+    return "com.google.gwt.query.client.impl.SelectorEngine";
+  }
+
   protected boolean hasGetElementsByClassName() {
     return false;
   }
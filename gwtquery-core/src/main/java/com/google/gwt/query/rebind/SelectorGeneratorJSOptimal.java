@@ -21,169 +21,502 @@ import com.google.gwt.core.ext.typeinfo.JMethod;
 import com.google.gwt.query.client.Selector;
 import com.google.gwt.user.rebind.SourceWriter;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
+ * Compiles selectors into a sequence of calls to the traversal and filter
+ * helpers in SelectorEngineCompiled, so the selector is not parsed at runtime.
  *
+ * It supports comma separated groups, the combinators ' ', '>', '+' and '~',
+ * tag, id, class and attribute selectors, and the pseudo classes first-child,
+ * last-child, only-child, nth-child, empty, checked, enabled, disabled and
+ * not. Any other selector is delegated to the runtime engine.
  */
 public class SelectorGeneratorJSOptimal extends SelectorGeneratorBase {
 
-  static class RuleMatcher {
+  /**
+   * A call to a helper of SelectorEngineCompiled. Arguments are Strings,
+   * Integers or Booleans.
+   */
+  static class Step {
+    final String fn;
+    final Object[] args;
 
-    public Pattern re;
+    Step(String fn, Object... args) {
+      this.fn = fn;
+      this.args = args;
+    }
+
+    /**
+     * The java statement which runs this step.
+     */
+    String toJava() {
+      String ret = "n = " + fn + "(n";
+      for (Object a : args) {
+        ret += ", " + (a instanceof String ? "\"" + escapeJava((String) a) + "\"" : a);
+      }
+      return ret + ");";
+    }
+
+    /**
+     * The equivalent xpath location step or predicate.
+     */
+    String toXPath() {
+      if ("descendants".equals(fn)) {
+        return "/descendant::" + args[0];
+      } else if ("descendantsById".equals(fn)) {
+        return "/descendant::" + args[1] + "[@id=" + literal(args[0]) + "]";
+      } else if ("descendantsByClass".equals(fn)) {
+        return "/descendant::*[" + wordPredicate("@class", args[0]) + "]";
+      } else if ("children".equals(fn)) {
+        return "/child::" + args[0];
+      } else if ("adjacent".equals(fn)) {
+        return "/following-sibling::*[1]/self::" + args[0];
+      } else if ("siblings".equals(fn)) {
+        return "/following-sibling::" + args[0];
+      }
+      String p;
+      if ("filterId".equals(fn)) {
+        p = "@id=" + literal(args[0]);
+      } else if ("filterTag".equals(fn)) {
+        p = "self::" + args[0];
+      } else if ("filterClass".equals(fn)) {
+        p = wordPredicate("@class", args[0]);
+      } else if ("filterAttr".equals(fn)) {
+        p = attrPredicate("@" + args[0], (String) args[1], args[2]);
+      } else if ("filterChild".equals(fn)) {
+        int a = (Integer) args[0], c = 1 - (Integer) args[1];
+        String pos = "(count(preceding-sibling::*)" + (c < 0 ? "" : "+") + c + ")";
+        p = a == 0 ? pos + "=0" : pos + " mod " + a + "=0 and " + pos + " div " + a + ">=0";
+      } else if ("filterLastChild".equals(fn)) {
+        p = (Boolean) args[0] ? "not(preceding-sibling::*) and not(following-sibling::*)"
+            : "not(following-sibling::*)";
+      } else if ("filterEmpty".equals(fn)) {
+        p = "not(*) and not(text())";
+      } else if ("filterState".equals(fn)) {
+        p = "checked".equals(args[0]) ? "@checked" : "("
+            + "self::input[not(@type='hidden')] or self::button or self::select"
+            + " or self::textarea or self::option or self::optgroup or self::fieldset) and "
+            + ("disabled".equals(args[0]) ? "@disabled" : "not(@disabled)");
+      } else {
+        throw new IllegalStateException("Unknown step " + fn);
+      }
+      return (Boolean) args[args.length - 1] ? "[" + p + "]" : "[not(" + p + ")]";
+    }
+
+    public String toString() {
+      return toJava();
+    }
+  }
+
+  // A simple selector: tag, #id, .class, [attr] or :pseudo
+  private static class Part {
+    char kind;
+    String name, op = "", val;
+    boolean keep = true;
+
+    Part(char kind, String name) {
+      this.kind = kind;
+      this.name = name;
+    }
+  }
+
+  private static Pattern nthRe = Pattern
+      .compile("^([+-]?\\d*)n(?:([+-])(\\d+))?$");
 
-    public String fnTemplate;
+  /**
+   * Compile a selector into a list of branches, one per each comma separated
+   * selector, each one with the steps to run starting from the root node.
+   *
+   * Return null when the selector uses syntax this compiler does not support.
+   */
+  static List<List<Step>> compile(String selector) {
+    Parser p = new Parser(selector);
+    List<List<Step>> ret = new ArrayList<List<Step>>();
+    do {
+      List<Step> branch = p.branch();
+      if (branch == null) {
+        return null;
+      }
+      ret.add(branch);
+    } while (p.accept(','));
+    return p.eof() ? ret : null;
+  }
 
-    RuleMatcher(String pat, String fnT) {
-      this.re = Pattern.compile(pat);
-      this.fnTemplate = fnT;
+  /**
+   * Return true when the result of running the steps could have duplicates
+   * or could not be in document order.
+   */
+  static boolean needsSort(List<List<Step>> branches) {
+    if (branches.size() > 1) {
+      return true;
+    }
+    for (Step s : branches.get(0)) {
+      if (s.fn.equals("children") || s.fn.equals("adjacent") || s.fn.equals("siblings")) {
+        return true;
+      }
     }
+    return false;
   }
 
-  protected static Pattern nonSpace = Pattern.compile("\\S/");
+  /**
+   * Return a xpath expression equivalent to the compiled selector.
+   */
+  static String toXPath(List<List<Step>> branches) {
+    String ret = "";
+    for (List<Step> branch : branches) {
+      ret += ret.isEmpty() ? "." : "|.";
+      for (Step s : branch) {
+        ret += s.toXPath();
+      }
+    }
+    return ret;
+  }
 
-  protected static final String trimReStr = "^\\s+|\\s+$";
+  static String escapeJava(String s) {
+    return s.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
 
-  protected static Pattern trimRe = Pattern.compile(trimReStr);
+  private static String attrPredicate(String a, String op, Object val) {
+    String v = literal(val);
+    if (op.isEmpty()) {
+      return a;
+    } else if ("=".equals(op)) {
+      return a + "=" + v;
+    } else if ("!=".equals(op)) {
+      return "not(" + a + "=" + v + ")";
+    } else if ("^=".equals(op)) {
+      return "starts-with(" + a + "," + v + ")";
+    } else if ("$=".equals(op)) {
+      return "substring(" + a + ",string-length(" + a + ")-"
+          + (((String) val).length() - 1) + ")=" + v;
+    } else if ("*=".equals(op)) {
+      return "contains(" + a + "," + v + ")";
+    } else if ("~=".equals(op)) {
+      return wordPredicate(a, val);
+    } else {
+      return "(" + a + "=" + v + " or starts-with(" + a + "," + literal(val + "-") + "))";
+    }
+  }
 
-  protected static Pattern tplRe = Pattern.compile("\\{(\\d+)\\}");
+  private static String literal(Object o) {
+    String s = String.valueOf(o);
+    return s.contains("'") ? "\"" + s + "\"" : "'" + s + "'";
+  }
+
+  private static String wordPredicate(String a, Object word) {
+    return "contains(concat(' ',normalize-space(" + a + "),' '),"
+        + literal(" " + word + " ") + ")";
+  }
 
-  protected static Pattern modeRe = Pattern
-      .compile("^(\\s?[\\/>+~]\\s?|\\s|$)");
+  /**
+   * Recursive descent parser which produces the steps while reading the
+   * selector.
+   */
+  private static class Parser {
+    final String s;
+    int pos = 0;
 
-  protected static Pattern tagTokenRe = Pattern
-      .compile("^(#)?([a-zA-Z_0-9-\\*]+)");
+    Parser(String s) {
+      this.s = s;
+    }
 
-  protected static Pattern nthRe = Pattern.compile("(\\d*)n\\+?(\\d*)");
+    boolean accept(char c) {
+      ws();
+      if (pos < s.length() && s.charAt(pos) == c) {
+        pos++;
+        ws();
+        return true;
+      }
+      return false;
+    }
 
-  protected static Pattern nthRe2 = Pattern.compile("\\D");
+    List<Step> branch() {
+      List<Step> steps = new ArrayList<Step>();
+      ws();
+      char comb = ' ';
+      if (pos < s.length() && ">+~".indexOf(s.charAt(pos)) >= 0) {
+        comb = s.charAt(pos++);
+        ws();
+      }
+      while (true) {
+        List<Part> parts = compound();
+        if (parts == null) {
+          return null;
+        }
+        addSteps(steps, comb, parts);
 
-  protected static RuleMatcher[] matchers = new RuleMatcher[]{
-      new RuleMatcher("^\\.([a-zA-Z_0-9-]+)",
-          "n = byClassName(n, null, \"{0}\");"),
-      new RuleMatcher("^\\:([a-zA-Z_0-9-]+)(?:\\(((?:[^ >]*|.*?))\\))?",
-          "n = byPseudo(n, \"{0}\", \"{1}\");"), new RuleMatcher(
-          "^(?:([\\[\\{])(?:@)?([a-zA-Z_0-9-]+)\\s?(?:(=|.=)\\s?['\"]?(.*?)[\"']?)?[\\]\\}])",
-          "n = byAttribute(n, \"{1}\", \"{3}\", \"{2}\", \"{0}\");"),
-      new RuleMatcher("^#([a-zA-Z_0-9-]+)", "n = byId(n, null, \"{0}\");")};
+        boolean space = ws();
+        if (pos == s.length() || s.charAt(pos) == ',') {
+          return steps;
+        } else if (">+~".indexOf(s.charAt(pos)) >= 0) {
+          comb = s.charAt(pos++);
+          ws();
+        } else if (space) {
+          comb = ' ';
+        } else {
+          return null;
+        }
+      }
+    }
+
+    boolean eof() {
+      ws();
+      return pos == s.length();
+    }
+
+    private void addSteps(List<Step> steps, char comb, List<Part> parts) {
+      String tag = "*";
+      if (!parts.isEmpty() && parts.get(0).kind == 't' && parts.get(0).keep) {
+        tag = parts.remove(0).name;
+      }
+      if (comb == '>') {
+        steps.add(new Step("children", tag));
+      } else if (comb == '+') {
+        steps.add(new Step("adjacent", tag));
+      } else if (comb == '~') {
+        steps.add(new Step("siblings", tag));
+      } else {
+        // short circuit ids, and classes when no tag is given
+        Part first = null;
+        for (Part p : parts) {
+          if (p.keep && (p.kind == '#' || p.kind == '.' && "*".equals(tag))
+              && (first == null || first.kind == '.' && p.kind == '#')) {
+            first = p;
+          }
+        }
+        if (first == null) {
+          steps.add(new Step("descendants", tag));
+        } else if (first.kind == '#') {
+          steps.add(new Step("descendantsById", first.name, tag));
+        } else {
+          steps.add(new Step("descendantsByClass", first.name));
+        }
+        parts.remove(first);
+      }
+      for (Part p : parts) {
+        steps.add(filter(p));
+      }
+    }
+
+    private Step filter(Part p) {
+      switch (p.kind) {
+        case 't':
+          return new Step("filterTag", p.name, p.keep);
+        case '#':
+          return new Step("filterId", p.name, p.keep);
+        case '.':
+          return new Step("filterClass", p.name, p.keep);
+        case '[':
+          return new Step("filterAttr", p.name, p.op, p.val, p.keep);
+        default:
+          if ("first-child".equals(p.name)) {
+            return new Step("filterChild", 0, 1, p.keep);
+          } else if ("last-child".equals(p.name)) {
+            return new Step("filterLastChild", false, p.keep);
+          } else if ("only-child".equals(p.name)) {
+            return new Step("filterLastChild", true, p.keep);
+          } else if ("nth-child".equals(p.name)) {
+            int[] ab = nth(p.val);
+            return new Step("filterChild", ab[0], ab[1], p.keep);
+          } else if ("empty".equals(p.name)) {
+            return new Step("filterEmpty", p.keep);
+          } else {
+            return new Step("filterState", p.name, p.keep);
+          }
+      }
+    }
+
+    private List<Part> compound() {
+      List<Part> parts = new ArrayList<Part>();
+      if (pos < s.length() && s.charAt(pos) == '*') {
+        pos++;
+        parts.add(new Part('t', "*"));
+      } else {
+        String tag = ident();
+        if (tag != null) {
+          parts.add(new Part('t', tag));
+        }
+      }
+      while (pos < s.length() && "#.[:".indexOf(s.charAt(pos)) >= 0) {
+        Part p = simple();
+        if (p == null) {
+          return null;
+        }
+        parts.add(p);
+      }
+      return parts.isEmpty() ? null : parts;
+    }
+
+    private String ident() {
+      int start = pos;
+      while (pos < s.length()
+          && (Character.isLetterOrDigit(s.charAt(pos)) || "-_".indexOf(s.charAt(pos)) >= 0)) {
+        pos++;
+      }
+      return pos > start ? s.substring(start, pos) : null;
+    }
+
+    private static int[] nth(String arg) {
+      String v = arg.replaceAll("\\s+", "").toLowerCase();
+      if ("odd".equals(v)) {
+        return new int[]{2, 1};
+      } else if ("even".equals(v)) {
+        return new int[]{2, 0};
+      } else if (v.matches("^[+-]?\\d+$")) {
+        return new int[]{0, Integer.parseInt(v.replace("+", ""))};
+      }
+      Matcher m = nthRe.matcher(v);
+      if (!m.matches()) {
+        return null;
+      }
+      String a = m.group(1);
+      int b = m.group(3) == null ? 0 : Integer.parseInt(m.group(3));
+      return new int[]{
+          a.isEmpty() || "+".equals(a) ? 1 : "-".equals(a) ? -1 : Integer.parseInt(a.replace("+", "")),
+          "-".equals(m.group(2)) ? -b : b};
+    }
+
+    private Part simple() {
+      char c = s.charAt(pos++);
+      if (c == '#' || c == '.') {
+        String name = ident();
+        return name == null ? null : new Part(c, name);
+      } else if (c == '[') {
+        ws();
+        if (pos < s.length() && s.charAt(pos) == '@') {
+          pos++;
+        }
+        String name = ident();
+        if (name == null) {
+          return null;
+        }
+        Part p = new Part('[', name);
+        ws();
+        for (String op : new String[]{"=", "!=", "^=", "$=", "*=", "~=", "|="}) {
+          if (s.startsWith(op, pos)) {
+            p.op = op;
+            pos += op.length();
+            ws();
+            p.val = value();
+            if (p.val == null
+                || p.val.isEmpty() && !"=".equals(op) && !"!=".equals(op)
+                || "~=".equals(op) && p.val.matches(".*\\s.*")) {
+              return null;
+            }
+            break;
+          }
+        }
+        return accept(']') ? p : null;
+      } else if (c == ':') {
+        String name = ident();
+        if (name == null) {
+          return null;
+        }
+        name = name.toLowerCase();
+        Part p = new Part(':', name);
+        if ("not".equals(name) || "nth-child".equals(name)) {
+          if (!accept('(')) {
+            return null;
+          }
+          if ("not".equals(name)) {
+            // only a simple selector is allowed inside not
+            List<Part> parts = compound();
+            if (parts == null || parts.size() != 1 || !parts.get(0).keep) {
+              return null;
+            }
+            p = parts.get(0);
+            p.keep = false;
+          } else {
+            int start = pos;
+            while (pos < s.length() && s.charAt(pos) != ')') {
+              pos++;
+            }
+            p.val = s.substring(start, pos);
+            if (nth(p.val) == null) {
+              return null;
+            }
+          }
+          return accept(')') ? p : null;
+        }
+        return name.matches("first-child|last-child|only-child|empty|checked|enabled|disabled")
+            ? p : null;
+      }
+      return null;
+    }
+
+    private String value() {
+      if (pos < s.length() && (s.charAt(pos) == '\'' || s.charAt(pos) == '"')) {
+        int end = s.indexOf(s.charAt(pos), pos + 1);
+        if (end < 0) {
+          return null;
+        }
+        String ret = s.substring(pos + 1, end);
+        pos = end + 1;
+        return ret.indexOf('\\') < 0 ? ret : null;
+      }
+      int start = pos;
+      while (pos < s.length() && s.charAt(pos) != ']' && !Character.isWhitespace(s.charAt(pos))) {
+        pos++;
+      }
+      String ret = s.substring(start, pos);
+      return ret.matches(".*['\"\\\\\\[].*") ? null : ret;
+    }
+
+    private boolean ws() {
+      int start = pos;
+      while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+        pos++;
+      }
+      return pos > start;
+    }
+  }
 
   protected void generateMethodBody(SourceWriter sw, JMethod method,
       TreeLogger treeLogger, boolean hasContext)
       throws UnableToCompleteException {
 
     String selector = method.getAnnotation(Selector.class).value();
+    List<List<Step>> branches = compile(selector);
 
-    sw.println("return " + wrap(method,
-        "impl.select(\"" + selector + "\", root)") + ";");
-//    sw.println("JSArray n = JSArray.create();");
-//    if(!hasContext) {
-//      sw.println("Node root = Document.get();");
-//    }
-//
-//    // add root node as context.
-//    // TODO: support any context
-//    sw.println("n.addNode(root);");
-//    String q = selector, lq = null;
-//    Matcher lmode = modeRe.matcher(q);
-//    Matcher mm = null;
-//    String mode = "";
-//    if (lmode.lookingAt() && notNull(lmode.group(1))) {
-//      mode = lmode.group(1).replaceAll(trimReStr, "").trim();
-//      q = q.replaceFirst("\\Q" + lmode.group(1) + "\\E", "");
-//    }
-//
-//    while (notNull(q) && !q.equals(lq)) {
-//      debug("Doing q=" + q);
-//
-//      lq = q;
-//      Matcher tm = tagTokenRe.matcher(q);
-//      if (tm.lookingAt()) {
-//        if ("#".equals(tm.group(1))) {
-//          sw.println("n = quickId(n, \"" + mode + "\", root, \"" + tm.group(2)
-//              + "\");");
-//        } else {
-//          String tagName = tm.group(2);
-//          tagName = "".equals(tagName) ? "*" : tagName;
-//     //     sw.println("if (n.size() == 0) { n=JSArray.create(); }");
-//          String func = "";
-//          if ("".equals(mode)) {
-//            func = "getDescendentNodes";
-//          } else if (">".equals(mode)) {
-//            func = "getChildNodes";
-//          } else if ("+".equals(mode)) {
-//            func = "getSiblingNodes";
-//          } else if ("~".equals(mode)) {
-//            func = "getGeneralSiblingNodes";
-//          } else {
-//            treeLogger.log(TreeLogger.ERROR, "Error parsing selector, combiner "
-//                + mode + " not recognized in " + selector, null);
-//            throw new UnableToCompleteException();
-//          }
-//          sw.println("n = " + func + "(n, \"" + tagName + "\");");
-//        }
-//        debug("replacing in q, the value " + tm.group(0));
-//        q = q.replaceFirst("\\Q" + tm.group(0) + "\\E", "");
-//      } else {
-//        String func = "";
-//        String tagName = "*";
-//        if ("".equals(mode)) {
-//          func = "getDescendentNodes";
-//        } else if (">".equals(mode)) {
-//          func = "getChildNodes";
-//        } else if ("+".equals(mode)) {
-//          func = "getSiblingNodes";
-//        } else if ("~".equals(mode)) {
-//          func = "getGeneralSiblingNodes";
-//        } else {
-//          treeLogger.log(TreeLogger.ERROR, "Error parsing selector, combiner "
-//              + mode + " not recognized in " + selector, null);
-//          throw new UnableToCompleteException();
-//        }
-//        sw.println("n = " + func + "(n, \"" + tagName + "\");");
-//      }
-//
-//      while (!(mm = modeRe.matcher(q)).lookingAt()) {
-//        debug("Looking at " + q);
-//        boolean matched = false;
-//        for (RuleMatcher rm : matchers) {
-//          Matcher rmm = rm.re.matcher(q);
-//          if (rmm.lookingAt()) {
-//            String res[] = new String[rmm.groupCount()];
-//            for (int i = 1; i <= rmm.groupCount(); i++) {
-//              res[i - 1] = rmm.group(i);
-//              debug("added param " + res[i - 1]);
-//            }
-//            Object[] r = res;
-//            // inline enum, perhaps type-tightening will allow inlined eval()
-//            // call
-//            if (rm.fnTemplate.indexOf("byPseudo") != -1) {
-//              sw.println("n = Pseudo."+res[0].toUpperCase().replace("-", "_") +
-//                  ".eval(n, \""+res[1]+"\");");
-//            } else {
-//              sw.println(MessageFormat.format(rm.fnTemplate, r));
-//            }
-//            q = q.replaceFirst("\\Q" + rmm.group(0) + "\\E", "");
-//            matched = true;
-//            break;
-//          }
-//        }
-//        if (!matched) {
-//          treeLogger
-//              .log(TreeLogger.ERROR, "Error parsing selector at " + q, null);
-//          throw new UnableToCompleteException();
-//        }
-//      }
-//
-//      if (notNull(mm.group(1))) {
-//        mode = mm.group(1).replaceAll(trimReStr, "");
-//        debug("replacing q=" + q + " this part:" + mm.group(1));
-//        q = q.replaceFirst("\\Q" + mm.group(1) + "\\E", "");
-//      }
-//    }
-//    sw.println("return "+wrap(method, "nodup(n)")+";");
+    if (branches == null) {
+      debug("Selector not supported by the compiler, using the runtime engine: " + selector);
+      sw.println("return " + wrap(method,
+          "impl.select(\"" + escapeJava(selector) + "\", root)") + ";");
+      return;
+    }
+
+    String result = "n";
+    if (branches.size() == 1) {
+      sw.println("JsNodeArray n = JsNodeArray.create(root);");
+      for (Step s : branches.get(0)) {
+        sw.println(s.toJava());
+      }
+    } else {
+      sw.println("JsNodeArray r = JsNodeArray.create(), n;");
+      for (List<Step> branch : branches) {
+        sw.println("n = JsNodeArray.create(root);");
+        for (Step s : branch) {
+          sw.println(s.toJava());
+        }
+        sw.println("r.pushAll(n);");
+      }
+      result = "r";
+    }
+    if (needsSort(branches)) {
+      result = "sortUnique(" + result + ")";
+    }
+    sw.println("return " + wrap(method, result) + ";");
   }
 
   protected String getImplSuffix() {
     return "JS" + super.getImplSuffix();
   }
+
+  protected String getSuperclass() {
+    return "com.google.gwt.query.client.impl.SelectorEngineCompiled";
+  }
 }
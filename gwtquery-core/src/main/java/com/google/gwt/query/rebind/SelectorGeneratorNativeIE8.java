@@ -23,9 +23,10 @@ import com.google.gwt.query.client.impl.SelectorEngineNativeIE8;
 import com.google.gwt.user.rebind.SourceWriter;
 
 /**
- * Compile time selector generator which delegates to native browser methods.
+ * Compile time selector generator which delegates to native browser methods,
+ * the selectors not supported by them are compiled.
  */
-public class SelectorGeneratorNativeIE8 extends SelectorGeneratorJS {
+public class SelectorGeneratorNativeIE8 extends SelectorGeneratorJSOptimal {
 
   @Override
   protected void generateMethodBody(SourceWriter sw, JMethod method,
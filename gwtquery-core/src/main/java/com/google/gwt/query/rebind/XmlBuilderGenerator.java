@@ -107,13 +107,13 @@ public class XmlBuilderGenerator extends Generator {
         sw.println("return getPropertiesBase(\"" + name + "\");");
       } else if (arr != null) {
         String q = arr.getComponentType().getQualifiedSourceName();
-        sw.println("ArrayList<" + q + "> l = new ArrayList<" + q+ ">();");
-        sw.println("for (Element e: getElementsBase(\"" + name + "\")) {");
-        sw.println("  " + q + " c = GWT.create(" + q + ".class);");
-        sw.println("  c.load(e);");
-        sw.println("  l.add(c);");
+        sw.println("Element[] e = getElementsBase(\"" + name + "\");");
+        sw.println(q + "[] r = new " + q + "[e.length];");
+        sw.println("for (int i = 0; i < e.length; i++) {");
+        sw.println("  r[i] = GWT.create(" + q + ".class);");
+        sw.println("  r[i].load(e[i]);");
         sw.println("}");
-        sw.println("return l.toArray(new " + q + "[0]);");
+        sw.println("return r;");
       } else {
         sw.println("return null; // Unsupported return type: " + retType);
       }
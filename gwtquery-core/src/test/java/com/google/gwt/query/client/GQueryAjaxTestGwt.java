@@ -17,6 +17,7 @@ package com.google.gwt.query.client;
 
 
 import static com.google.gwt.query.client.GQuery.$;
+import static com.google.gwt.query.client.GQuery.window;
 
 import java.util.Arrays;
 import java.util.Date;
@@ -24,13 +25,22 @@ import java.util.List;
 
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Element;
+import com.google.gwt.http.client.Response;
 import com.google.gwt.junit.DoNotRunWith;
 import com.google.gwt.junit.Platform;
 import com.google.gwt.junit.client.GWTTestCase;
 import com.google.gwt.query.client.builders.JsonBuilder;
 import com.google.gwt.query.client.builders.Name;
 import com.google.gwt.query.client.builders.XmlBuilder;
+import com.google.gwt.query.client.builders.XmlPullReader;
+import com.google.gwt.query.client.js.JsObjectArray;
+import com.google.gwt.query.client.js.JsUtils;
 import com.google.gwt.query.client.plugins.ajax.Ajax;
+import com.google.gwt.query.client.plugins.ajax.AjaxBatch;
+import com.google.gwt.query.client.plugins.ajax.AjaxCache;
+import com.google.gwt.query.client.plugins.ajax.AjaxScheduler;
+import com.google.gwt.query.client.plugins.ajax.AjaxStream;
+import com.google.gwt.query.client.plugins.ajax.JsonpRegistry;
 import com.google.gwt.query.client.plugins.ajax.Ajax.Settings;
 import com.google.gwt.user.client.ui.HTML;
 import com.google.gwt.user.client.ui.RootPanel;
@@ -49,6 +59,8 @@ public class GQueryAjaxTestGwt extends GWTTestCase {
   }
 
   public void gwtTearDown() {
+    Ajax.setBatch(null);
+    Ajax.getScheduler().setMaxPerHost(AjaxScheduler.DEFAULT_MAX_PER_HOST);
     $(e).remove();
     e = null;
   }
@@ -132,7 +144,91 @@ public class GQueryAjaxTestGwt extends GWTTestCase {
     String s = "{'a':1,'b':{'a':2,'b':{'a':3}},'u':'url','d':1234,'t':['foo','bar'],'z':false,'y':'y','items':[{'date':2000},{'date':3000}]}";
     assertEquals(s, c.toString().replaceAll("\"", "'"));
 
+    // lists are views of the js array, wrappers are reused
+    List<Item> list = c.getItems();
+    assertSame(list.get(0), list.get(0));
+    list.get(0).setDate(new Date(5000));
+    assertEquals(5000l, c.getItems().get(0).getDate().getTime());
+    Item i3 = GWT.create(Item.class);
+    i3.setDate(new Date(6000));
+    list.add(i3);
+    assertEquals(3, c.getItems().size());
+    assertEquals(6000l, c.getItems().get(2).getDate().getTime());
+    list.remove(0);
+    assertEquals(3000l, c.getItems().get(0).getDate().getTime());
+    assertEquals(2, c.getItems().size());
+
+    // the getter returns the same view until the array or the builder are replaced
+    assertSame(list, c.getItems());
+    assertSame(c.getItems().get(0), c.getItems().get(0));
+    c.setItems(Arrays.asList(items));
+    assertEquals(2000l, c.getItems().get(0).getDate().getTime());
+    c.parse(s.replace('\'', '"'));
+    assertNotSame(list, c.getItems());
+    assertEquals(3000l, c.getItems().get(1).getDate().getTime());
+  }
 
+  interface JsonTypes extends JsonBuilder {
+    int getI();
+    Integer getBoxed();
+    double getD();
+    float getF();
+    short getS();
+    char getC();
+    boolean getB();
+    Boolean getStrBool();
+    String getStr();
+    int[] getInts();
+    JsonTypes setInts(int[] a);
+    Double[] getDoubles();
+    List<Boolean> getBools();
+    List<String> getStrs();
+  }
+
+  public void testJsonBuilderTypes() {
+    String json = "{i: 3.7, boxed: '12', d: -1.5, f: 0.5, s: 7, c: 65, b: 1, strBool: 'true', "
+        + "str: 42, ints: [1, 2.9, 'x'], doubles: [0.5, null], bools: [true, 'false', 'true'], "
+        + "strs: ['a', 1, null]}";
+    JsonTypes c = GWT.create(JsonTypes.class);
+    assertEquals(0, c.getI());
+    assertEquals(0d, c.getD());
+    assertFalse(c.getB());
+    assertNull(c.getStr());
+    assertEquals(0, c.getInts().length);
+
+    c.parse(json, true);
+    assertEquals(3, c.getI());
+    assertEquals(Integer.valueOf(12), c.getBoxed());
+    assertEquals(-1.5d, c.getD());
+    assertEquals(0.5f, c.getF());
+    assertEquals(7, c.getS());
+    assertEquals('A', c.getC());
+    assertFalse(c.getB());
+    assertTrue(c.getStrBool());
+    assertEquals("42", c.getStr());
+    assertEquals("[1, 2, 0]", Arrays.toString(c.getInts()));
+    assertEquals(2, c.getDoubles().length);
+    assertEquals(0.5d, c.getDoubles()[0]);
+    assertEquals(0d, c.getDoubles()[1]);
+    assertEquals("[true, false, true]", c.getBools().toString());
+    assertEquals("[a, 1, null]", c.getStrs().toString());
+
+    List<Boolean> bools = c.getBools();
+    bools.set(1, true);
+    assertEquals("[true,true,\"true\"]", c.getProperties().getJavaScriptObject("bools").<Properties>cast().toJsonString());
+    c.getStrs().add("z");
+    assertEquals(4, c.getStrs().size());
+    assertEquals("z", c.getStrs().get(3));
+
+    c.setInts(new int[]{5, 6});
+    assertEquals("[5, 6]", Arrays.toString(c.getInts()));
+    assertEquals("[5,6]", c.getProperties().getJavaScriptObject("ints").<Properties>cast().toJsonString());
+
+    // large numbers saturate like the java (int) cast instead of wrapping
+    c.parse("{i: 3000000000, ints: [3000000000, -3000000000, 2147483647]}", true);
+    assertEquals(Integer.MAX_VALUE, c.getI());
+    assertEquals("[" + Integer.MAX_VALUE + ", " + Integer.MIN_VALUE + ", " + Integer.MAX_VALUE + "]",
+        Arrays.toString(c.getInts()));
   }
 
   interface XmlExample extends XmlBuilder {
@@ -180,6 +276,41 @@ public class GQueryAjaxTestGwt extends GWTTestCase {
     assertEquals(333d, x.getNum().getTextAsNumber());
   }
 
+  public void testXmlBuilderChildren() {
+    XmlExample x = GWT.create(XmlExample.class);
+    x.parse("<a><x a='1'/><y/><x a='2'/></a>");
+    assertEquals(2, x.getX().length);
+    assertEquals(x.getFirstX().getRootElement(), x.getX()[0].getRootElement());
+    x.append("<x a='3'/>");
+    assertEquals(3, x.getX().length);
+    assertEquals("3", x.getX()[2].getA());
+    $(x.getRootElement()).children().remove();
+    x.load(x.getRootElement());
+    assertEquals(0, x.getX().length);
+    assertNull(x.getFirstX());
+    // same number of children, but a different element
+    x.append("<x a='4'/>");
+    assertEquals("4", x.getFirstX().getA());
+    $(x.getX()[0].getRootElement()).remove();
+    $(x.getRootElement()).append(JsUtils.parseXML("<x a='5'/>"));
+    x.load(x.getRootElement());
+    assertEquals("5", x.getFirstX().getA());
+  }
+
+  public void testXmlPullReader() {
+    String xml = "<feed xmlns='http://purl.org/atom/ns#'>"
+        + "<entry><title>a</title><author><name>n1</name></author></entry>"
+        + "<entry><title>b</title><author><name>n2</name></author></entry>"
+        + "</feed>";
+    XmlPullReader r = new XmlPullReader(xml);
+    Feed.Entry e = GWT.create(Feed.Entry.class);
+    String s = "";
+    while (r.nextElement("entry", e)) {
+      s += e.getTitle().getText() + e.getAuthor().getName().getText();
+    }
+    assertEquals("an1bn2", s);
+  }
+
   interface Feed extends XmlBuilder {
     interface Tag extends XmlBuilder {
     }
@@ -271,6 +402,39 @@ public class GQueryAjaxTestGwt extends GWTTestCase {
     }, 500);
   }
 
+  public void testJsonpRegistry() {
+    delayTestFinish(5000);
+    final JsonpRegistry registry = Ajax.getJsonpRegistry();
+    final Element head = $("head").get(0);
+    final int slots = registry.getSlots();
+    final int scripts = $("script", head).size();
+    int merged = registry.getMerged();
+    // an inline script which calls the callback, the trailing comment
+    // absorbs the parameter added to the url
+    String url = "data:text/javascript,var%20x=?(%7B%22a%22:1%7D);//?";
+
+    final int[] count = {0};
+    Function success = new Function() {
+      public void f() {
+        assertEquals(1, getDataProperties().getInt("a"));
+        if (++count[0] == 2) {
+          // the global callback and the script are removed before calling us
+          assertEquals(0, registry.getActive());
+          assertEquals(scripts, $("script", head).size());
+          for (int i = 0; i < registry.getSlots(); i++) {
+            assertFalse(JsUtils.hasProperty(window, JsonpRegistry.PREFIX + i));
+          }
+          finishTest();
+        }
+      }
+    };
+    Ajax.getJsonpImpl(head, url, null, success, null, 0);
+    Ajax.getJsonpImpl(head, url, null, success, null, 0);
+    assertEquals(1, registry.getActive());
+    assertEquals(merged + 1, registry.getMerged());
+    assertTrue(registry.getSlots() <= slots + 1);
+  }
+
   public void testJsonTimeout() {
     delayTestFinish(5000);
     String nonJsonpUrl = "http://127.0.0.1/nopage";
@@ -293,4 +457,266 @@ public class GQueryAjaxTestGwt extends GWTTestCase {
     Ajax.ajax(s);
   }
 
+  public void testAjaxCache() {
+    delayTestFinish(5000);
+    final String url = GWT.getModuleBaseURL() + GWT.getModuleName() + ".nocache.js";
+    final AjaxCache cache = Ajax.getCache();
+    cache.clear();
+    cache.resetStats();
+
+    final int[] responses = {0};
+    final Function onSuccess = new Function() {
+      public void f() {
+        assertTrue(getData()[0].toString().length() > 0);
+        if (++responses[0] == 3) {
+          assertEquals(1, cache.getMisses());
+          assertEquals(2, cache.getMerged());
+          assertEquals(1, cache.size());
+          // served from the cache, but after ajax() returns like a network response
+          final boolean[] returned = {false};
+          Ajax.ajax(Ajax.createSettings().setUrl(url).setType("get").setCache(true)
+              .setSuccess(new Function() {
+            public void f() {
+              assertTrue(returned[0]);
+              assertEquals(1, cache.getHits());
+              assertEquals(0, cache.getPending());
+              finishTest();
+            }
+          }));
+          returned[0] = true;
+        }
+      }
+    };
+    for (int i = 0; i < 3; i++) {
+      Ajax.ajax(Ajax.createSettings().setUrl(url).setType("get").setCache(true)
+          .setCacheTtl(10000).setSuccess(onSuccess));
+    }
+    assertEquals(1, cache.getPending());
+  }
+
+  public void testAjaxBatch() {
+    final String[] payload = {null};
+    AjaxBatch batch = new AjaxBatch() {
+      protected void send(String url, String data, Function onSuccess, Function onError) {
+        assertEquals("/batch", url);
+        payload[0] = data;
+        // mock endpoint: one element per request, the second one fails
+        onSuccess.fe("[{\"status\": 200, \"data\": {\"a\": 1}}, "
+            + "{\"status\": 404, \"data\": \"not found\"}, \"plain\"]");
+      }
+    };
+    Ajax.setBatch(batch);
+    batch.setEndpoint("/batch").setMaxSize(3);
+
+    final String[] result = {""};
+    Ajax.ajax(Ajax.createSettings().setBatch(true).setUrl("one").setType("get")
+        .setDataType("json").setSuccess(new Function() {
+          public void f() {
+            Properties p = getDataProperties();
+            result[0] += "one:" + p.getInt("a") + " ";
+          }
+        }));
+    Ajax.ajax(Ajax.createSettings().setBatch(true).setUrl("two").setType("post")
+        .setDataString("x=1").setError(new Function() {
+          public void f() {
+            result[0] += "two:" + getData()[0] + " ";
+          }
+        }));
+    assertEquals(2, batch.getPending());
+    assertEquals("", result[0]);
+
+    Ajax.ajax(Ajax.createSettings().setBatch(true).setUrl("three").setType("get")
+        .setSuccess(new Function() {
+          public void f() {
+            result[0] += "three:" + getData()[0];
+          }
+        }));
+    assertEquals("one:1 two:not found three:plain", result[0]);
+    assertEquals(0, batch.getPending());
+    assertEquals(1, batch.getBatches());
+    assertEquals(3, batch.getRequests());
+
+    Properties p = JsUtils.parseJSON("{\"a\":" + payload[0] + "}");
+    JsObjectArray<Properties> sent = p.getJavaScriptObject("a");
+    assertEquals(3, sent.length());
+    Properties second = sent.get(1);
+    assertEquals("POST", second.getStr("type"));
+    assertEquals("two", second.getStr("url"));
+    assertEquals("x=1", second.getStr("data"));
+
+    // a malformed batch response is reported to every call
+    for (final String response : new String[]{"<html>oops</html>", null, "{\"length\": 2}"}) {
+      batch = new AjaxBatch() {
+        protected void send(String url, String data, Function onSuccess, Function onError) {
+          onSuccess.fe(response);
+        }
+      };
+      Ajax.setBatch(batch);
+      batch.setEndpoint("/batch").setMaxSize(2);
+      result[0] = "";
+      for (String url : new String[]{"four", "five"}) {
+        Ajax.ajax(Ajax.createSettings().setBatch(true).setUrl(url).setError(new Function() {
+          public void f() {
+            result[0] += getData()[1] + ";";
+          }
+        }));
+      }
+      assertEquals("Malformed batch response: " + response + ";"
+          + "Malformed batch response: " + response + ";", result[0]);
+    }
+  }
+
+  public void testAjaxStream() {
+    delayTestFinish(5000);
+    final int total = 2000;
+    final int[] sum = {0};
+    final AjaxStream stream = new AjaxStream(new Function() {
+      public void f() {
+        assertEquals(sum[0], getDataProperties().getInt("i"));
+        assertEquals(sum[0], ((Integer)getData()[1]).intValue());
+        sum[0] ++;
+      }
+    }, new Function() {
+      public void f() {
+        assertEquals(total, getData()[0]);
+        assertEquals(total, sum[0]);
+        finishTest();
+      }
+    }, new Function() {
+      public void f() {
+        fail();
+      }
+    });
+
+    String text = "";
+    for (int i = 0; i < total; i++) {
+      text += "{\"i\": " + i + ", \"s\": \"line " + i + "\"}" + (i % 3 == 0 ? "\r\n" : "\n");
+    }
+    // split the text in chunks which do not match the lines, the last record
+    // does not have a trailing new line
+    text = text.trim();
+    for (int i = 0; i < text.length(); i += 1000) {
+      stream.write(text.substring(i, Math.min(text.length(), i + 1000)));
+    }
+    // records are delivered asynchronously
+    assertEquals(0, sum[0]);
+    stream.end();
+  }
+
+  public void testAjaxStreamMalformed() {
+    delayTestFinish(5000);
+    final String[] s = {""};
+    AjaxStream stream = new AjaxStream(new Function() {
+      public void f() {
+        s[0] += getDataProperties().getStr("s");
+      }
+    }, new Function() {
+      public void f() {
+        fail();
+      }
+    }, new Function() {
+      public void f() {
+        // records before the malformed line are delivered, the rest are not
+        assertEquals("a", s[0]);
+        assertNotNull(getData()[1]);
+        finishTest();
+      }
+    });
+    stream.write("{\"s\": \"a\"}\n{\"s\": \"b\n{\"s\": \"c\"}\n");
+    stream.end();
+  }
+
+  public void testAjaxStreamUrl() {
+    delayTestFinish(5000);
+    final String url = GWT.getModuleBaseURL() + "ajaxstream.json";
+    final AjaxScheduler scheduler = Ajax.getScheduler();
+    final String[] s = {""};
+    Ajax.ajax(Ajax.createSettings().setUrl(url).setType("get").setRecord(new Function() {
+      public void f() {
+        s[0] += getDataProperties().getStr("s");
+      }
+    }).setSuccess(new Function() {
+      public void f() {
+        assertEquals(4, getData()[0]);
+        assertEquals("abcd", s[0]);
+        assertEquals(0, scheduler.getInFlight(AjaxScheduler.getHost(url)));
+        // http errors do not deliver records, the error function receives
+        // the response like in the rest of requests
+        Ajax.ajax(Ajax.createSettings().setUrl(url + ".missing").setType("get").setRecord(new Function() {
+          public void f() {
+            fail();
+          }
+        }).setSuccess(new Function() {
+          public void f() {
+            fail();
+          }
+        }).setError(new Function() {
+          public void f() {
+            assertNotNull(getData()[0]);
+            assertEquals("error", getData()[1]);
+            assertEquals(404, ((Response)getData()[3]).getStatusCode());
+            assertEquals(getData()[0], ((Response)getData()[3]).getText());
+            assertEquals(0, scheduler.getInFlight(AjaxScheduler.getHost(url)));
+            finishTest();
+          }
+        }));
+      }
+    }).setError(new Function() {
+      public void f() {
+        fail();
+      }
+    }));
+  }
+
+  public void testAjaxScheduler() {
+    delayTestFinish(5000);
+    String url = GWT.getModuleBaseURL() + GWT.getModuleName() + ".nocache.js";
+    final AjaxScheduler scheduler = Ajax.getScheduler();
+    scheduler.setMaxPerHost(1);
+    scheduler.resetStats();
+    // same origin urls share the limit
+    assertEquals(AjaxScheduler.getHost(url), AjaxScheduler.getHost("test.html"));
+
+    final String[] order = {""};
+    Settings low = Ajax.createSettings().setUrl(url).setType("get").setPriority(AjaxScheduler.LOW);
+    Settings cancelled = Ajax.createSettings().setUrl(url).setType("get");
+    Settings high = Ajax.createSettings().setUrl(url).setType("get").setPriority(AjaxScheduler.HIGH);
+
+    Ajax.ajax(Ajax.createSettings().setUrl(url).setType("get").setSuccess(new Function() {
+      public void f() {
+        order[0] += "first ";
+      }
+    }));
+    Ajax.ajax(low.setSuccess(new Function() {
+      public void f() {
+        order[0] += "low";
+        assertEquals("first high low", order[0]);
+        assertEquals(3, scheduler.getDispatched());
+        assertEquals(1, scheduler.getCancelled());
+        assertEquals(0, scheduler.getQueued());
+        finishTest();
+      }
+    }));
+    Ajax.ajax(cancelled.setSuccess(new Function() {
+      public void f() {
+        fail();
+      }
+    }).setError(new Function() {
+      public void f() {
+        order[0] += "abort ";
+      }
+    }));
+    Ajax.ajax(high.setSuccess(new Function() {
+      public void f() {
+        order[0] += "high ";
+      }
+    }));
+
+    assertEquals(1, scheduler.getInFlight());
+    assertEquals(3, scheduler.getQueued());
+    assertEquals(3, scheduler.getQueued(AjaxScheduler.getHost(url)));
+    assertEquals(1, scheduler.cancel(cancelled));
+    assertEquals("abort ", order[0]);
+    order[0] = "";
+  }
 }
@@ -28,6 +28,7 @@ import java.util.List;
 import com.google.gwt.query.client.GQuery.Offset;
 import junit.framework.Assert;
 
+import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.dom.client.Document;
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.dom.client.InputElement;
@@ -40,6 +41,8 @@ import com.google.gwt.junit.Platform;
 import com.google.gwt.junit.client.GWTTestCase;
 import com.google.gwt.query.client.css.CSS;
 import com.google.gwt.query.client.css.RGBColor;
+import com.google.gwt.query.client.impl.DomBatch;
+import com.google.gwt.query.client.impl.HtmlChunker;
 import com.google.gwt.query.client.impl.SelectorEngineCssToXPath;
 import com.google.gwt.query.client.impl.SelectorEngineImpl;
 import com.google.gwt.query.client.impl.SelectorEngineSizzle;
@@ -207,6 +210,28 @@ public class GQueryCoreTestGwt extends GWTTestCase {
     $("span").append("<div>c</div>");
     assertHtmlEquals("<span>a<div>c</div></span><span>b<div>c</div></span>", $(
         e).html());
+
+    // several nodes into several targets
+    $(e).html("<span>a</span><span>b</span>");
+    GQuery g = $("<i>1</i><b>2</b>");
+    final int[] clicks = {0};
+    g.click(new Function() {
+      public void f(Element elem) {
+        clicks[0]++;
+      }
+    });
+    $("span", e).prepend(g);
+    assertHtmlEquals("<span><i>1</i><b>2</b>a</span><span><i>1</i><b>2</b>b</span>",
+        $(e).html());
+    // the original nodes go to the first target and keep their handlers
+    assertEquals($("span", e).get(0), g.get(0).getParentElement());
+    $("span:first i", e).click();
+    assertEquals(1, clicks[0]);
+
+    $(e).html("<span>a</span><span>b</span>");
+    $("span", e).after("<i>1</i><b>2</b>").before("<u>0</u>");
+    assertHtmlEquals("<u>0</u><span>a</span><i>1</i><b>2</b><u>0</u><span>b</span><i>1</i><b>2</b>",
+        $(e).html());
   }
 
   public void testEach() {
@@ -494,6 +519,37 @@ public class GQueryCoreTestGwt extends GWTTestCase {
     assertHtmlEquals(expected, $(e).html());
   }
 
+  public void testAppendChunked() {
+    String rows = "";
+    for (int i = 0; i < 50; i++) {
+      rows += "<tr><td class='c'>" + i + "</td><td><input value='" + i + "'></td></tr>";
+    }
+    final String table = "<table><tbody>" + rows + "</tbody></table>";
+    $(e).html("<div id='t1'>old</div><div id='t2'></div>");
+
+    delayTestFinish(5000);
+    GQuery g = $("#t1, #t2", e);
+    new HtmlChunker().setChunkSize(100).html(g, table, null);
+    g.appendChunked("<p>end</p>", new Function() {
+      int calls = 0;
+      public void f(Element elm) {
+        if (++calls == 2) {
+          for (String id : new String[]{"t1", "t2"}) {
+            GQuery t = $("#" + id, e);
+            assertEquals(1, t.children("table").size());
+            assertEquals(50, t.find("tr").size());
+            assertEquals("49", t.find("td.c").last().text());
+            assertEquals("end", t.children().last().text());
+            assertFalse(t.text().startsWith("old"));
+          }
+          finishTest();
+        }
+      }
+    });
+    // nothing inserted until the scheduler runs
+    assertEquals("old", $("#t1", e).text());
+  }
+
   public void testOffset(){
     $(e).html(
         "<div id='id1' style='padding-left:10px; padding-top:20px;'><div id='id2'>Content 1</div></div>");
@@ -524,6 +580,39 @@ public class GQueryCoreTestGwt extends GWTTestCase {
 
   }
 
+  public void testBatch() {
+    $(e).html("<div id='id1'>Content 1</div><div id='id2'>Content 2</div>");
+    DomBatch.resetStats();
+
+    GQuery g = $("div", e).batch();
+    g.css("color", "red");
+    g.eq(1).css("width", "50px");
+    // changes are queued
+    assertEquals("", $("#id1", e).css("color", false));
+    assertEquals("", $("#id2", e).css("width", false));
+    assertEquals(2, DomBatch.getPending());
+
+    // reading the layout after a change does not force a reflow
+    g.width();
+    g.eq(1).height(20);
+    g.offset(10, 0);
+    assertEquals(2, DomBatch.getAvoidedReflows());
+
+    g.flush();
+    assertEquals(0, DomBatch.getPending());
+    assertEquals("red", $("#id1", e).css("color", false));
+    assertEquals("red", $("#id2", e).css("color", false));
+    assertEquals("50px", $("#id2", e).css("width", false));
+    assertEquals("20px", $("#id2", e).css("height", false));
+    assertEquals(10, $("#id1", e).offset().top);
+    assertEquals(10, $("#id2", e).offset().top);
+
+    // objects which are not batched apply changes immediately
+    $("#id1", e).css("color", "blue");
+    assertEquals("blue", $("#id1", e).css("color", false));
+    assertEquals(0, DomBatch.getPending());
+  }
+
   public void testOpacity() {
     $(e).html(
         "<p id='id1' style='opacity: 0.6; filter: alpha(opacity=60)'>Content 1</p>");
@@ -1436,6 +1525,39 @@ public class GQueryCoreTestGwt extends GWTTestCase {
     Assert.assertEquals(0, $((String) null).eq(0).size());
   }
 
+  public void testDataStorage() {
+    $(e).html("<div id='parent'><div id='child'></div></div>");
+
+    $("#parent", e).data("a", "1").data("b", "2");
+    $("#child", e).data("a", "3");
+    assertEquals("1", $("#parent", e).data("a"));
+    assertEquals("3", $("#child", e).data("a"));
+
+    $("#parent", e).data("a", "4");
+    assertEquals("4", $("#parent", e).data("a"));
+
+    $("#parent", e).removeData("a");
+    assertNull($("#parent", e).data("a"));
+    assertEquals("2", $("#parent", e).data("b"));
+
+    // removing the last key deletes the expando
+    Element child = $("#child", e).get(0);
+    assertTrue(JsUtils.hasProperty(child.<JavaScriptObject>cast(), "__gqdata"));
+    $(child).removeData("a");
+    assertFalse(JsUtils.hasProperty(child.<JavaScriptObject>cast(), "__gqdata"));
+
+    // the storage mode is fixed once data has been stored
+    assertTrue(GQuery.isDataExpando());
+    GQuery.setDataExpando(true);
+    try {
+      GQuery.setDataExpando(false);
+      fail();
+    } catch (RuntimeException ex) {
+      assertTrue(GQuery.isDataExpando());
+    }
+    assertEquals("2", $("#parent", e).data("b"));
+  }
+
   public void testRemoveMethod(){
     String html = "<div id='parent'>parent<div id='child'>child</div></div>";
     $(e).html(html);
@@ -23,7 +23,10 @@ import com.google.gwt.junit.DoNotRunWith;
 import com.google.gwt.junit.Platform;
 import com.google.gwt.junit.client.GWTTestCase;
 import com.google.gwt.query.client.GQuery.Offset;
+import com.google.gwt.query.client.js.JsCache;
 import com.google.gwt.query.client.plugins.Effects;
+import com.google.gwt.query.client.plugins.effects.AnimationTicker;
+import com.google.gwt.query.client.plugins.effects.Fx;
 import com.google.gwt.query.client.plugins.effects.Fx.ColorFx;
 import com.google.gwt.query.client.plugins.effects.PropertiesAnimation;
 import com.google.gwt.query.client.plugins.effects.PropertiesAnimation.Easing;
@@ -325,6 +328,33 @@ public class GQueryEffectsTestGwt extends GWTTestCase {
     assertEquals(255, effect.getEndColor()[2]);
   }
 
+  public void testFxApplyValue() {
+    $(e).html("<div id='test' style='width: 100px; color: #000000; border: 1px solid #000000'>Test</div>");
+    GQuery g = $("#test", e);
+    Element t = g.get(0);
+
+    Fx fx = PropertiesAnimation.computeFxProp(t, "width", "200px", false);
+    fx.init(t);
+    fx.applyValue(g, 0.5);
+    assertEquals("150px", g.css("width", false));
+
+    fx = PropertiesAnimation.computeFxProp(t, "font-size", "20px", false);
+    fx.init(t);
+    fx.applyValue(g, 1);
+    assertEquals("20px", t.getStyle().getFontSize());
+
+    fx = PropertiesAnimation.computeFxProp(t, "color", "#ffffff", false);
+    fx.init(t);
+    fx.applyValue(g, 1);
+    assertTrue(g.css("color", false).matches("rgb\\(255, ?255, ?255\\)|#ffffff"));
+
+    fx = PropertiesAnimation.computeFxProp(t, "borderColor", "#ffffff", false);
+    fx.init(t);
+    fx.applyValue(g, 0);
+    fx.applyValue(g, 1);
+    assertTrue(g.css("border-left-color", false).matches("rgb\\(255, ?255, ?255\\)|#ffffff"));
+  }
+
   private void assertPosition(GQuery g, Offset min, Offset max) {
     int a = Math.min(min.top, max.top);
     int b = Math.max(min.top, max.top);
@@ -367,6 +397,36 @@ public class GQueryEffectsTestGwt extends GWTTestCase {
     timer.schedule(duration * 2);
   }
 
+  public void testAnimationTicker() {
+    $(e).html("<div>1</div><div>2</div><div>3</div><div>4</div><div>5</div>");
+    final AnimationTicker ticker = AnimationTicker.getInstance();
+    final int duration = 500;
+
+    delayTestFinish(duration * 3);
+
+    $("div", e).animate($$("width: 100px"), duration);
+
+    final Timer timerMidTime = new Timer() {
+      public void run() {
+        // all the animations are run from the same browser frame
+        assertTrue(ticker.isRunning());
+        assertEquals(5, ticker.getCallbacksPerFrame());
+        assertEquals(5, ticker.getPending());
+      }
+    };
+    timerMidTime.schedule(duration / 2);
+
+    final Timer timerLongTime = new Timer() {
+      public void run() {
+        // the ticker stops when there are no animations
+        assertFalse(ticker.isRunning());
+        assertEquals(0, ticker.getPending());
+        finishTest();
+      }
+    };
+    timerLongTime.schedule(duration * 2);
+  }
+
   public void testStop() {
     $(e)
     .html(
@@ -439,7 +499,7 @@ public class GQueryEffectsTestGwt extends GWTTestCase {
     w.setVisible(false);
     RootPanel.get().add(w);
     w.getElement().setId("e");
-    GQuery g = $(w);
+    final GQuery g = $(w);
 
     int test_duration = 1000;
     int fx_duration = 200;
@@ -472,13 +532,13 @@ public class GQueryEffectsTestGwt extends GWTTestCase {
         // Check that all animations and the delayed function has been run
         assertEquals(loops + 1, animationRunCounter);
 
-        // Check that nothings is left in the dataCache object
-        assertEquals(0, GQuery.dataCache.length());
+        // Check that nothings is left in the data of the element
+        assertNull(g.get(0).<JsCache>cast().get("__gqdata"));
 
         // Check that getting queue size does not initialize the data
         // object for this object
         assertEquals(0, $(this).queue());
-        assertEquals(0, GQuery.dataCache.length());
+        assertNull(g.get(0).<JsCache>cast().get("__gqdata"));
 
         // Mark the test as success and stop delay timer
         finishTest();
@@ -39,7 +39,9 @@ import com.google.gwt.junit.client.GWTTestCase;
 import com.google.gwt.query.client.css.CSS;
 import com.google.gwt.query.client.css.Length;
 import com.google.gwt.query.client.css.RGBColor;
+import com.google.gwt.query.client.js.JsUtils;
 import com.google.gwt.query.client.plugins.Events;
+import com.google.gwt.query.client.plugins.events.BindOptions;
 import com.google.gwt.query.client.plugins.events.EventsListener;
 import com.google.gwt.user.client.Event;
 import com.google.gwt.user.client.Timer;
@@ -543,6 +545,85 @@ public class GQueryEventsTestGwt extends GWTTestCase {
 
   }
 
+  public void testLiveIndexedSelectors() {
+    $(e).html("<div id='div1' class='a'><p id='p1' title='t'><span id='span1' class='b c'>blop</span></p></div>");
+
+    final StringBuilder fired = new StringBuilder();
+    for (final String selector : new String[] {"span", "#div1", ".c", "em, .a", "[title=t]", "div:first"}) {
+      $(selector, e).live("click", new Function() {
+        public void f() {
+          fired.append("[" + selector + "]" + $(this).attr("id"));
+        }
+      });
+    }
+
+    $("#span1", e).click();
+    assertEquals("[span]span1[.c]span1[[title=t]]p1[#div1]div1[em, .a]div1[div:first]div1",
+        fired.toString());
+
+    fired.setLength(0);
+    $(".c", e).die("click");
+    $("#span1", e).removeClass("c");
+    $("#div1", e).removeClass("a").attr("id", "div2");
+    $("#span1", e).click();
+    assertEquals("[span]span1[[title=t]]p1[div:first]div2", fired.toString());
+  }
+
+  public void testLiveDocumentRoot() {
+    $(e).html("<div id='div1'><span id='span1'>blop</span></div>");
+
+    final StringBuilder fired = new StringBuilder();
+    $(".rootLive").live("click", new Function() {
+      public void f() {
+        fired.append($(this).attr("id"));
+      }
+    });
+
+    $("#span1", e).click();
+    assertEquals("", fired.toString());
+
+    $("#div1", e).addClass("rootLive").append("<span id='span2' class='rootLive'>new</span>");
+    $("#span2", e).click();
+    assertEquals("span2div1", fired.toString());
+
+    // neither the context nor the matched elements have a listener
+    assertFalse(JsUtils.hasProperty(e, "__gqueryevent"));
+    assertFalse(JsUtils.hasProperty($("#div1", e).get(0), "__gqueryevent"));
+    assertFalse(JsUtils.hasProperty($("#span2", e).get(0), "__gqueryevent"));
+
+    fired.setLength(0);
+    $(".rootLive").die("click");
+    $("#span2", e).click();
+    assertEquals("", fired.toString());
+
+    // focus does not bubble, it is captured by the document
+    $("#div1", e).append("<input id='input1' class='rootLive'>");
+    $(".rootLive").live("focus", new Function() {
+      public void f() {
+        fired.append($(this).attr("id"));
+      }
+    });
+    $("#input1", e).trigger(Event.ONFOCUS);
+    assertEquals("input1div1", fired.toString());
+    $(".rootLive").die("focus");
+
+    // undelegating the body or the document removes the handlers of the root
+    for (GQuery root : new GQuery[]{$("body"), $(document)}) {
+      fired.setLength(0);
+      $(".rootLive").live("click", new Function() {
+        public void f() {
+          fired.append($(this).attr("id"));
+        }
+      });
+      $("#span2", e).click();
+      assertEquals("span2div1", fired.toString());
+      fired.setLength(0);
+      root.undelegate();
+      $("#span2", e).click();
+      assertEquals("", fired.toString());
+    }
+  }
+
   public void testLiveWithEventBit() {
     $(e).html("<div id='div1'><div id='div2'>Content 1<span id='span1'> blop</span></div></div>");
 
@@ -1314,4 +1395,191 @@ public class GQueryEventsTestGwt extends GWTTestCase {
     div.click();
     assertEquals(1, count[0]);
   }
+
+  public void testEventSpecCache() {
+    $(e).html("<div class='mdiv'>");
+    GQuery div = $(".mdiv", e);
+    final int[] count = { 0 };
+    Function f = new Function() {
+      public void f() {
+        count[0]++;
+      }
+    };
+    int hits = EventsListener.getEventSpecCache().getHits();
+    div.bind("click.spec mouseenter.spec", f);
+    div.bind("click.spec mouseenter.spec", f);
+    assertEquals(hits + 1, EventsListener.getEventSpecCache().getHits());
+
+    div.click();
+    assertEquals(2, count[0]);
+    div.unbind("click.spec");
+    div.click();
+    assertEquals(2, count[0]);
+    div.unbind("mouseenter.spec");
+    div.bind("click.other", f);
+    div.unbind("click.spec");
+    div.click();
+    assertEquals(3, count[0]);
+  }
+
+  public void testEventSpecCacheSpecialAddedLater() {
+    $(e).html("<div class='mdiv'>");
+    GQuery div = $(".mdiv", e);
+    final int[] count = { 0 };
+    Function f = new Function() {
+      public void f() {
+        count[0]++;
+      }
+    };
+    // the string is parsed and cached before the special event exists
+    div.bind("tap.spec", f);
+    div.unbind("tap.spec");
+    EventsListener.special.put("tap", new EventsListener.SpecialEvent() {
+      public String getDelegateType() {
+        return "click";
+      }
+      public String getOriginalType() {
+        return "tap";
+      }
+      public Function createDelegateHandler(Function originalHandler) {
+        return originalHandler;
+      }
+    });
+    try {
+      div.bind("tap.spec", f);
+      div.click();
+      assertEquals(1, count[0]);
+      div.unbind("tap.spec");
+      div.click();
+      assertEquals(1, count[0]);
+    } finally {
+      EventsListener.special.remove("tap");
+    }
+  }
+
+  public void testUnbindWhileDispatching() {
+    $(e).html("<div class='mdiv'>");
+    final GQuery div = $(".mdiv", e);
+    final StringBuilder fired = new StringBuilder();
+    final Function second = new Function() {
+      public void f() {
+        fired.append("2");
+      }
+    };
+    div.bind(Event.ONMOUSEOVER, null, new Function() {
+      public void f() {
+        fired.append("o");
+      }
+    });
+    div.bind(Event.ONCLICK, null, new Function() {
+      public void f() {
+        fired.append("1");
+        div.unbind(Event.ONCLICK, second);
+        div.bind(Event.ONCLICK, null, new Function() {
+          public void f() {
+            fired.append("3");
+          }
+        });
+      }
+    });
+    div.bind(Event.ONCLICK | Event.ONMOUSEOVER, null, second);
+
+    div.trigger(Event.ONMOUSEOVER);
+    assertEquals("o2", fired.toString());
+    fired.setLength(0);
+    div.click();
+    // the handler unbound while dispatching is not called, the new one waits for the next event
+    assertEquals("1", fired.toString());
+    fired.setLength(0);
+    div.trigger(Event.ONMOUSEOVER);
+    assertEquals("o2", fired.toString());
+  }
+
+  public void testBindOptions() {
+    $(e).html("<div class='mdiv'>");
+    final GQuery div = $(".mdiv", e);
+    final int[] count = {0, 0, 0, 0};
+    div.as(Events.Events).bind(new BindOptions().setDebounce(50), "click", null, new Function() {
+      public void f() {
+        count[0]++;
+      }
+    }).bind(new BindOptions().setThrottle(1000), Event.ONCLICK, "throttle", null, new Function() {
+      public void f() {
+        count[1]++;
+      }
+    }).bind(new BindOptions().setPassive(true), "mousemove", null, new Function() {
+      public boolean f(Event ev) {
+        count[2]++;
+        // passive handlers can not prevent the default action
+        return false;
+      }
+    }).bind(new BindOptions().setFrame(true), "mouseover", null, new Function() {
+      public void f() {
+        count[3]++;
+      }
+    });
+
+    div.click().click().click();
+    div.trigger(Event.ONMOUSEMOVE).trigger(Event.ONMOUSEMOVE).trigger(Event.ONMOUSEMOVE);
+    // debounced events wait, the first throttled event is delivered at once
+    assertEquals(0, count[0]);
+    assertEquals(1, count[1]);
+    assertEquals(3, count[2]);
+
+    div.trigger(Event.ONMOUSEOVER).trigger(Event.ONMOUSEOVER);
+    assertEquals(0, count[3]);
+
+    delayTestFinish(3000);
+    new Timer() {
+      public void run() {
+        assertEquals(1, count[0]);
+        assertEquals(2, count[1]);
+        assertEquals(3, count[2]);
+        assertEquals(1, count[3]);
+        // pending events are discarded when unbinding
+        div.click();
+        div.unbind("click");
+        new Timer() {
+          public void run() {
+            assertEquals(1, count[0]);
+            finishTest();
+          }
+        }.schedule(100);
+      }
+    }.schedule(1500);
+  }
+
+  public void testBindPassiveOrder() {
+    $(e).html("<div class='pout'><div class='pin'></div></div>");
+    final StringBuilder fired = new StringBuilder();
+    $(".pout", e).as(Events.Events).bind(new BindOptions().setPassive(true), "mousedown", null,
+        new Function() {
+          public boolean f(Event ev) {
+            fired.append("passive-out ");
+            return false;
+          }
+        });
+    $(".pin", e).bind("mousedown", new Function() {
+      public void f() {
+        fired.append("in ");
+      }
+    });
+    // passive handlers bubble like the rest, so inner handlers run first
+    $(".pin", e).trigger(Event.ONMOUSEDOWN);
+    assertEquals("in passive-out ", fired.toString());
+  }
+
+  public void testBindPassiveNotSupported() {
+    $(e).html("<input class='pin'>");
+    final int[] count = {0};
+    // change can not be passive, so the handler is bound as a normal one
+    $(".pin", e).as(Events.Events).bind(new BindOptions().setPassive(true), "change", null,
+        new Function() {
+          public void f() {
+            count[0]++;
+          }
+        });
+    $(".pin", e).trigger(Event.ONCHANGE);
+    assertEquals(1, count[0]);
+  }
 }
@@ -19,6 +19,7 @@ import static com.google.gwt.query.client.GQuery.*;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.query.client.impl.LruCache;
 import com.google.gwt.query.client.js.JsCache;
 import com.google.gwt.query.client.js.JsNodeArray;
 import com.google.gwt.user.client.ui.HTML;
@@ -137,4 +138,30 @@ public class GQueryJsTestGwt extends GWTTestCase {
     p.remove("d");
     assertFalse(p.defined("d"));
   }
+
+  public void testPropertiesCache() {
+    LruCache<String, ?> cache = Properties.getCache();
+    cache.clear();
+    cache.resetStats();
+
+    Properties p1 = $$("a: 1, b: 'x'");
+    Properties p2 = $$("a: 1, b: 'x'");
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+    assertNotSame(p1, p2);
+    p1.set("b", "y");
+    assertEquals("x", p2.getStr("b"));
+    assertEquals("x", $$("a: 1, b: 'x'").getStr("b"));
+
+    // nested objects are not shared either
+    p1 = $$("a: {b: 1}");
+    p1.<Properties>getJavaScriptObject("a").set("b", 2);
+    assertEquals(1, $$("a: {b: 1}").<Properties>getJavaScriptObject("a").getInt("b"));
+
+    cache.setMaxSize(0);
+    assertEquals(0, cache.size());
+    assertEquals(1, $$("a: 1, b: 'x'").getInt("a"));
+    assertEquals(0, cache.size());
+    cache.setMaxSize(Properties.DEFAULT_CACHE_SIZE);
+  }
 }
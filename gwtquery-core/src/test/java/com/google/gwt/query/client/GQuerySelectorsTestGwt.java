@@ -20,6 +20,7 @@ import static com.google.gwt.query.client.GQuery.body;
 import static com.google.gwt.query.client.GQuery.document;
 
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.JsArray;
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.dom.client.Node;
@@ -27,10 +28,14 @@ import com.google.gwt.dom.client.NodeList;
 import com.google.gwt.junit.DoNotRunWith;
 import com.google.gwt.junit.Platform;
 import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.query.client.impl.LruCache;
+import com.google.gwt.query.client.impl.SelectorEngine;
 import com.google.gwt.query.client.impl.SelectorEngineCssToXPath;
 import com.google.gwt.query.client.impl.SelectorEngineImpl;
 import com.google.gwt.query.client.impl.SelectorEngineNative;
 import com.google.gwt.query.client.impl.SelectorEngineSizzle;
+import com.google.gwt.query.client.Selectors.DeferredSelector;
+import com.google.gwt.query.client.impl.research.CompiledSelectors;
 import com.google.gwt.query.client.impl.research.SelectorEngineJS;
 import com.google.gwt.query.client.impl.research.SelectorEngineSizzleGwt;
 import com.google.gwt.query.client.impl.research.SelectorEngineXPath;
@@ -143,6 +148,76 @@ public class GQuerySelectorsTestGwt extends GWTTestCase {
     NodeList<Element> ulTocLiTocLine2();
   }
 
+  // Always compiled, one selector per helper of SelectorEngineCompiled
+  protected interface CompiledTestSelectors extends CompiledSelectors {
+    @Selector("div p")
+    NodeList<Element> divP(Node n);
+    @Selector("div #title")
+    NodeList<Element> divSpaceTitle(Node n);
+    @Selector("div .example")
+    NodeList<Element> divExample(Node n);
+    @Selector("div > div")
+    NodeList<Element> divGtDiv(Node n);
+    @Selector("div + p")
+    NodeList<Element> divPlusP(Node n);
+    @Selector("div ~ p")
+    NodeList<Element> divTildeP(Node n);
+    @Selector("h1#title")
+    NodeList<Element> h1Title(Node n);
+    @Selector("ul.toc li.tocline2")
+    NodeList<Element> ulTocLiTocLine2(Node n);
+    @Selector("div[class]")
+    NodeList<Element> divWithClass(Node n);
+    @Selector("div[class=example]")
+    NodeList<Element> divWithClassExample(Node n);
+    @Selector("div[class~=dialog]")
+    NodeList<Element> divWithClassListContainsDialog(Node n);
+    @Selector("div[class^=exa][class$=mple]")
+    NodeList<Element> divPrefixExaSuffixMple(Node n);
+    @Selector("div[class*=e]")
+    NodeList<Element> divWithClassContainsE(Node n);
+    @Selector("a[href][lang][class]")
+    NodeList<Element> aHrefLangClass(Node n);
+    @Selector("p:first-child")
+    NodeList<Element> firstChild(Node n);
+    @Selector("p:last-child")
+    NodeList<Element> lastChild(Node n);
+    @Selector("p:only-child")
+    NodeList<Element> onlyChild(Node n);
+    @Selector("p:nth-child(2n+1)")
+    NodeList<Element> nThChild2nPlus1(Node n);
+    @Selector("p:nth-child(even)")
+    NodeList<Element> nThChildEven(Node n);
+    @Selector("p:empty")
+    NodeList<Element> pEmpty(Node n);
+    @Selector("*:checked")
+    NodeList<Element> allChecked(Node n);
+    @Selector("input:enabled")
+    NodeList<Element> inputEnabled(Node n);
+    @Selector("div:not(.example)")
+    NodeList<Element> divNotExample(Node n);
+    @Selector("div:not(p)")
+    NodeList<Element> divNotP(Node n);
+    @Selector("h1:not(#title)")
+    NodeList<Element> h1NotTitle(Node n);
+    @Selector(":not(p)")
+    NodeList<Element> notP(Node n);
+    @Selector("div :not(p)")
+    NodeList<Element> divSpaceNotP(Node n);
+    @Selector("div > :not(div)")
+    NodeList<Element> divGtNotDiv(Node n);
+    @Selector("h1 + :not(p)")
+    NodeList<Element> h1PlusNotP(Node n);
+    @Selector(".note")
+    NodeList<Element> note(Node n);
+    @Selector("div, p a")
+    NodeList<Element> divCommaPA(Node n);
+    @Selector("#title, h1#title")
+    NodeList<Element> titleAndh1Title(Node n);
+    @Selector("h1#title + em > span")
+    NodeList<Element> h1TitlePlusEmGtSpan(Node n);
+  }
+
   protected interface TestSelectors extends Selectors {
     @Selector("*:checked")
     GQuery allChecked();
@@ -179,7 +254,7 @@ public class GQuerySelectorsTestGwt extends GWTTestCase {
   }-*/;
 
   public String getModuleName() {
-    return "com.google.gwt.query.Query";
+    return "com.google.gwt.query.QueryTest";
   }
 
   public void gwtTearDown() {
@@ -271,6 +346,27 @@ public class GQuerySelectorsTestGwt extends GWTTestCase {
     assertArrayContains(sel.ulTocLiTocLine2().getLength(), 12);
   }
 
+  public void testCompiledSelectorsSameAsRuntime() {
+    final CompiledTestSelectors sel = GWT.create(CompiledTestSelectors.class);
+    $(e).html(getTestContent());
+
+    SelectorEngineImpl engine = hasNativeSelector() ? new SelectorEngineNative()
+        : new SelectorEngineSizzle();
+    for (DeferredSelector s : sel.getAllSelectors()) {
+      NodeList<Element> compiled = s.runSelector(e);
+      NodeList<Element> runtime = engine.select(s.getSelector(), e);
+      assertEquals(s.getSelector(), runtime.getLength(), compiled.getLength());
+      for (int i = 0; i < runtime.getLength(); i++) {
+        assertEquals(s.getSelector(), runtime.getItem(i), compiled.getItem(i));
+      }
+    }
+    // the markers used to dedupe nodes are removed
+    for (Element el : $("*", e).elements()) {
+      assertFalse(JsUtils.hasProperty(el.<JavaScriptObject>cast(), "__gqsib"));
+      assertFalse(JsUtils.hasProperty(el.<JavaScriptObject>cast(), "__gqsel"));
+    }
+  }
+
   public void testIssue12() {
     $(e).html("<table><tr><td><p myCustomAttr='whatever'><input disabled='disabled' type='radio' name='wantedName' value='v1'>1</input></p><input type='radio' name='n' value='v2' checked='checked'>2</input></td><td><button myCustomAttr='val'>Click</button></tr><td></table>");
     executeSelectInAllImplementations(":checked", e, 1);
@@ -284,6 +380,54 @@ public class GQuerySelectorsTestGwt extends GWTTestCase {
     executeSelectInAllImplementations("input[name=\"wantedName\"]", e, 1);
   }
 
+  public void testSelectorCache() {
+    $(e).html("<div class='a'><p>1</p><p style='display: none'>2</p></div>");
+    SelectorEngine engine = new SelectorEngine();
+    LruCache<String, ?> cache = engine.getSelectorCache();
+    cache.resetStats();
+
+    assertEquals(1, engine.select(".a p:hidden", e).getLength());
+    assertEquals(0, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    assertEquals(1, engine.select(".a p:hidden", e).getLength());
+    assertEquals(2, engine.select(".a p", e).getLength());
+    assertEquals(1, engine.select(".a p:visible", e).getLength());
+    assertEquals(1, engine.select(".a p:hidden", e).getLength());
+    assertEquals(2, cache.getHits());
+    assertEquals(3, cache.getMisses());
+  }
+
+  public void testMatchesSelector() {
+    $(e).html("<div class='a'><p id='p1' class='b'>1</p><p id='p2' style='display: none'>2</p></div>");
+    SelectorEngine engine = new SelectorEngine();
+    Element p1 = $("#p1", e).get(0);
+    Element p2 = $("#p2", e).get(0);
+
+    assertTrue(engine.matches(p1, "p"));
+    assertTrue(engine.matches(p1, "div.a > p.b"));
+    assertTrue(engine.matches(p1, "span, p:visible"));
+    assertFalse(engine.matches(p1, "p:hidden"));
+    assertTrue(engine.matches(p2, "p:hidden"));
+    assertFalse(engine.matches(p2, "div.a > p.b"));
+    assertFalse(engine.matches(null, "p"));
+    assertTrue(engine.isPositional("p:first"));
+    assertFalse(engine.isPositional("p:first-child"));
+
+    // detached elements
+    Element d = $("<div class='c'><span/></div>").get(0);
+    assertTrue(engine.matches(d, "div.c"));
+    assertTrue(engine.matches(d.getFirstChildElement(), ".c > span"));
+    assertNull(d.getParentNode());
+
+    assertEquals(1, $("p", e).filter(".b").size());
+    assertEquals(1, $("p", e).not(".b").size());
+    assertEquals("p2", $("p", e).not(".b").attr("id"));
+    assertTrue($("p", e).is("div > p"));
+    assertFalse($("p", e).is("span", "div > p > p"));
+    assertEquals(1, $("p", e).closest("div.a").size());
+  }
+
   public void testSelectElementsInsideContext() {
     $(e).html("<spam><p>s</p></spam>");
     GQuery q = $("spam", e);
@@ -16,6 +16,9 @@
 package com.google.gwt.query.client;
 
 import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.query.client.builders.XmlPullReader;
+import com.google.gwt.query.client.impl.research.PropertiesRegex;
+import com.google.gwt.user.client.Event;
 
 /**
  * Test class for testing gwtquery-core api in JRE.
@@ -33,6 +36,24 @@ public class JreQueryCoreTest extends GWTTestCase {
         " <p class=abc added=\"null\">Whatever</p>");
   }
 
+  public void testEventHandlerData() {
+    Function handler = new Function() {
+      public boolean f(Event e) {
+        return true;
+      }
+    };
+    // the array set by the dispatcher is kept while it holds the data
+    Object[] args = {"a"};
+    handler.setData(args);
+    handler.fe(null, "a");
+    assertSame(args, handler.getData());
+    // other data gets its own array, as any other call
+    handler.fe(null, "b");
+    assertNotSame(args, handler.getData());
+    assertEquals("b", handler.getDataObject());
+    assertEquals("a", args[0]);
+  }
+
   public void testWrapPropertiesString() {
     assertEquals("{}", Properties
         .wrapPropertiesString(""));
@@ -54,4 +75,42 @@ public class JreQueryCoreTest extends GWTTestCase {
         .wrapPropertiesString("$x:22.60,$y:.0,h:#y"));
   }
 
+  public void testWrapPropertiesStringSameAsRegex() {
+    for (String s : PropertiesRegex.CORPUS) {
+      assertEquals(s, PropertiesRegex.wrapPropertiesString(s), Properties.wrapPropertiesString(s));
+    }
+    // values with escapes or quotes produce valid json
+    assertEquals("{\"a\":\"it's\\\"ok\\\"\"}", Properties.wrapPropertiesString("a: 'it\\'s\"ok\"'"));
+  }
+
+  public void testXmlPullReader() {
+    String xml = "<?xml version='1.0'?><!-- feed --><feed xmlns='urn:a' xmlns:g='urn:g'>"
+        + "<entry id='1' t=\"a &amp; b\"><g:title>T&lt;1&gt;</g:title><br/></entry>"
+        + "<entry id='2'><![CDATA[<x>]]></entry></feed>";
+    XmlPullReader r = new XmlPullReader(xml);
+    String events = "";
+    while (r.next() != XmlPullReader.END_DOCUMENT) {
+      switch (r.getEvent()) {
+        case XmlPullReader.START_TAG: events += "<" + r.getName() + r.getDepth(); break;
+        case XmlPullReader.END_TAG: events += "/" + r.getName() + r.getDepth(); break;
+        default: events += "[" + r.getText() + "]";
+      }
+    }
+    assertEquals("<feed1<entry2<g:title3[T<1>]/g:title3<br3/br3/entry2<entry2[<x>]/entry2/feed1", events);
+
+    r = new XmlPullReader(xml);
+    r.next();
+    r.next();
+    assertEquals("entry", r.getName());
+    assertEquals("a & b", r.getAttribute("t"));
+    assertNull(r.getAttribute("none"));
+    assertEquals("<entry xmlns:g=\"urn:g\" xmlns=\"urn:a\" id='1' t=\"a &amp; b\"><g:title>T&lt;1&gt;</g:title><br/></entry>",
+        r.readElement());
+    r.next();
+    assertEquals("2", r.getAttribute("id"));
+    assertEquals("<entry xmlns:g=\"urn:g\" xmlns=\"urn:a\" id='2'><![CDATA[<x>]]></entry>", r.readElement());
+    assertEquals(XmlPullReader.END_TAG, r.next());
+    assertEquals("feed", r.getName());
+    assertEquals(XmlPullReader.END_DOCUMENT, r.next());
+  }
 }
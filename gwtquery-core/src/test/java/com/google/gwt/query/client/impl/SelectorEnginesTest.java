@@ -80,4 +80,28 @@ public class SelectorEnginesTest extends GWTTestCase {
         sel.css2Xpath("div[@class='comment']:contains('John')"));
   }
 
+  public void testLruCache() {
+    LruCache<String, String> cache = new LruCache<String, String>(2);
+    cache.put("a", "A");
+    cache.put("b", "B");
+    assertEquals("A", cache.get("a"));
+    // b is the least recently used entry now
+    cache.put("c", "C");
+    assertEquals(2, cache.size());
+    assertNull(cache.get("b"));
+    assertEquals("A", cache.get("a"));
+    assertEquals("C", cache.get("c"));
+    assertEquals(3, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getEvictions());
+
+    cache.setMaxSize(1);
+    assertEquals(1, cache.size());
+    assertEquals("C", cache.get("c"));
+
+    cache.setMaxSize(0);
+    cache.put("d", "D");
+    assertEquals(0, cache.size());
+  }
+
 }
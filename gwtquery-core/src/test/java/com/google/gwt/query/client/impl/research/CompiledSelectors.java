@@ -0,0 +1,27 @@
+/*
+ * Copyright 2011, The gwtquery team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.query.client.impl.research;
+
+import com.google.gwt.query.client.Selectors;
+
+/**
+ * Selectors interfaces extending this one are always generated by
+ * SelectorGeneratorJSOptimal, even in browsers with native selectors, so
+ * the compiled selectors can be compared with the runtime engines.
+ * The rule lives in the test only module QueryTest.gwt.xml.
+ */
+public interface CompiledSelectors extends Selectors {
+}
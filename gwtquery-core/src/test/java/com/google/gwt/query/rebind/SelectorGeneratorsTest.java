@@ -15,13 +15,22 @@
  */
 package com.google.gwt.query.rebind;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.List;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
 
 import com.google.gwt.junit.client.GWTTestCase;
 import com.google.gwt.query.client.impl.SelectorEngineCssToXPath;
 import com.google.gwt.query.client.impl.SelectorEngineCssToXPath.ReplaceCallback;
+import com.google.gwt.query.rebind.SelectorGeneratorJSOptimal.Step;
 
 /**
  * Test class for selector generators.
@@ -113,4 +122,91 @@ public class SelectorGeneratorsTest extends GWTTestCase {
     sel.validateXpath(sel.css2Xpath("a[href^=http][href*=youtube.com/]"));
     sel.validateXpath(sel.css2Xpath("div[@class='comment']:contains('John')"));
   }
+
+  public void testCompiledSelectorsCode() {
+    String code = "";
+    for (Step s : SelectorGeneratorJSOptimal.compile("div.example > p:first-child").get(0)) {
+      code += s.toJava();
+    }
+    assertEquals("n = descendants(n, \"div\");n = filterClass(n, \"example\", true);"
+        + "n = children(n, \"p\");n = filterChild(n, 0, 1, true);", code);
+
+    code = "";
+    for (Step s : SelectorGeneratorJSOptimal.compile("#title + em, .toc li:not([lang])").get(1)) {
+      code += s.toJava();
+    }
+    assertEquals("n = descendantsByClass(n, \"toc\");n = descendants(n, \"li\");"
+        + "n = filterAttr(n, \"lang\", \"\", null, false);", code);
+
+    code = "";
+    for (Step s : SelectorGeneratorJSOptimal.compile("div > :not(p)").get(0)) {
+      code += s.toJava();
+    }
+    assertEquals("n = descendants(n, \"div\");n = children(n, \"*\");"
+        + "n = filterTag(n, \"p\", false);", code);
+  }
+
+  static String compiledDocument = "<html><body>"
+      + "<div id='d1' class='example main'><p id='p1'>a</p><p id='p2' class='note'>b</p><span lang='en-US'></span><p id='p3'></p></div>"
+      + "<div id='d2' class='examples'><div id='d3' class='example'><p id='p4' title='hello world'>c</p></div><p id='p5'>d</p>"
+      + "<ul class='toc'><li id='l1' class='tocline2'>1</li><li id='l2' class='tocline2 x'>2</li><li id='l3'>3</li></ul></div>"
+      + "<h1 id='title'>t</h1><em><span id='s1'>e</span></em><p id='p6'></p>"
+      + "<form><input id='i1' type='checkbox' checked='checked'/><input id='i2' disabled='disabled'/><input id='i3' type='hidden'/></form>"
+      + "<a href='http://www.youtube.com/x' lang='en' class='l'>y</a></body></html>";
+
+  public void testCompiledSelectors() throws Exception {
+    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new ByteArrayInputStream(compiledDocument.getBytes("UTF-8")));
+    SelectorGeneratorCssToXPath engine = new SelectorGeneratorCssToXPath();
+
+    String[] selectors = {"*", "div p", "div > p", "div + p", "div ~ p", "div p a",
+        "div.example", "div.example p", ".note", "#d3 p", "div#d3 > p", "p#p2.note",
+        "h1#title + em > span", "#title,h1#title", "ul.toc li.tocline2", ".toc .tocline2",
+        "div[class^=exa][class$=mple]", "div[class*=e]", "div[class~=main]",
+        "span[lang|=en]", "a[href][lang][class]", "p[title='hello world']",
+        "a[href^=http][href*=youtube.com/]", "div:not(.example)", "p:not(#p1)",
+        "p:first-child", "p:last-child", "li:only-child", "li:nth-child(odd)",
+        "li:nth-child(even)", "p:nth-child(2n)", "p:nth-child(2n+1)", "p:nth-child(n)",
+        "li:nth-child(3)", "p:empty", "input:checked", "div, p", "div > div p", "em>span"};
+
+    for (String selector : selectors) {
+      List<List<Step>> compiled = SelectorGeneratorJSOptimal.compile(selector);
+      assertNotNull(selector, compiled);
+      String xpath = SelectorGeneratorJSOptimal.toXPath(compiled);
+      assertEquals(selector + " -> " + xpath, ids(doc, engine.css2Xpath(selector)), ids(doc, xpath));
+    }
+
+    // A negated tag is a filter, never the tag of the step
+    String[][] notTag = {
+        {":not(p)", "html body div#d1 span div#d2 div#d3 ul li#l1 li#l2 li#l3 h1#title em "
+            + "span#s1 form input#i1 input#i2 input#i3 a "},
+        {"div :not(p)", "span div#d3 ul li#l1 li#l2 li#l3 "},
+        {"div > :not(p)", "span div#d3 ul "},
+        {"div > :not(div)", "p#p1 p#p2 span p#p3 p#p4 p#p5 ul "},
+        {"h1 + :not(p)", "em "},
+        {"h1 ~ :not(p)", "em form a "},
+        {"ul.toc :not(span)", "li#l1 li#l2 li#l3 "},
+        {"div:not(p)", "div#d1 div#d2 div#d3 "}};
+    for (String[] t : notTag) {
+      assertEquals(t[0], t[1], ids(doc, SelectorGeneratorJSOptimal.toXPath(
+          SelectorGeneratorJSOptimal.compile(t[0]))));
+    }
+
+    // Delegated to the runtime engine
+    for (String selector : new String[]{"tr:first", "p:contains(Selectors)",
+        "p:visible", "div:not(div.example)", "a[href=\"x\\\"y\"]", "div:has(p)"}) {
+      assertNull(selector, SelectorGeneratorJSOptimal.compile(selector));
+    }
+  }
+
+  private static String ids(Document doc, String xpath) throws Exception {
+    NodeList l = (NodeList) XPathFactory.newInstance().newXPath()
+        .evaluate(xpath, doc, XPathConstants.NODESET);
+    String ret = "";
+    for (int i = 0; i < l.getLength(); i++) {
+      org.w3c.dom.Element e = (org.w3c.dom.Element) l.item(i);
+      ret += e.getTagName() + (e.hasAttribute("id") ? "#" + e.getAttribute("id") : "") + " ";
+    }
+    return ret;
+  }
 }
@@ -22,12 +22,15 @@ import java.util.ArrayList;
 
 import com.google.gwt.core.client.EntryPoint;
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JsArray;
 import com.google.gwt.core.client.Scheduler;
 import com.google.gwt.core.client.Scheduler.RepeatingCommand;
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.query.client.Function;
 import com.google.gwt.query.client.GQuery;
+import com.google.gwt.query.client.Properties;
 import com.google.gwt.query.client.Selectors.DeferredSelector;
+import com.google.gwt.query.client.builders.JsonBuilder;
 import com.google.gwt.query.client.impl.SelectorEngineCssToXPath;
 import com.google.gwt.query.client.impl.SelectorEngineImpl;
 import com.google.gwt.query.client.impl.SelectorEngineNative;
@@ -36,6 +39,7 @@ import com.google.gwt.query.client.impl.SelectorEngineNativeMin;
 import com.google.gwt.query.client.impl.SelectorEngineNativeMinIE8;
 import com.google.gwt.query.client.impl.SelectorEngineSizzle;
 import com.google.gwt.query.client.impl.SelectorEngineSizzleIE;
+import com.google.gwt.query.client.impl.research.PropertiesRegex;
 import com.google.gwt.query.client.impl.research.SelectorEngineJS;
 import com.google.gwt.query.client.impl.research.SelectorEngineSizzleGwt;
 import com.google.gwt.query.client.impl.research.SelectorEngineXPath;
@@ -63,6 +67,11 @@ import com.google.gwt.user.client.ui.RootPanel;
  *    min=200         Minimum time running each selector
  *    track=false     Don't draw the horse race
  *    ask=false       Run default benchmarks, don't ask the user.
+ *    properties=true Compare the regex and the single pass parsers used to
+ *                    convert property strings to json, instead of the race.
+ *    json=true       Compare the typed accessors generated for JsonBuilder
+ *                    with the Properties getters they replaced, reading a
+ *                    large array of records, instead of the race.
  */
 public class GwtQueryBenchModule implements EntryPoint {
 
@@ -364,6 +373,16 @@ public class GwtQueryBenchModule implements EntryPoint {
     if (par != null && "false".equals(par)) {
       ask = false;
     }
+    par = Window.Location.getParameter("properties");
+    if (par != null && "true".equals(par)) {
+      runPropertiesBenchmark();
+      return;
+    }
+    par = Window.Location.getParameter("json");
+    if (par != null && "true".equals(par)) {
+      runJsonBenchmark();
+      return;
+    }
 
     exportIframeReadyCallback(this);
     initSelects(benchmarks);
@@ -372,6 +391,111 @@ public class GwtQueryBenchModule implements EntryPoint {
 
   }
 
+  /**
+   * Compare the time spent converting the corpus of property strings with
+   * the old regex chain and with Properties.wrapPropertiesString.
+   */
+  private void runPropertiesBenchmark() {
+    runComparison("Parser", new String[]{"regex", "parser"}, new Function() {
+      public void f() {
+        for (String s : PropertiesRegex.CORPUS) {
+          PropertiesRegex.wrapPropertiesString(s);
+        }
+      }
+    }, new Function() {
+      public void f() {
+        for (String s : PropertiesRegex.CORPUS) {
+          Properties.wrapPropertiesString(s);
+        }
+      }
+    });
+  }
+
+  /**
+   * Record read by the json benchmark.
+   */
+  public interface JsonRecord extends JsonBuilder {
+    int getId();
+    double getPrice();
+    boolean getActive();
+    String getName();
+  }
+
+  private static native JsArray<Properties> createJsonRecords(int n) /*-{
+    var a = [];
+    for (var i = 0; i < n; i++) {
+      a.push({id: i, price: i / 4, active: i % 2 == 0, name: 'item' + i});
+    }
+    return a;
+  }-*/;
+
+  // Accumulates the values read, so as the compiler can not prune the reads
+  private double jsonSum;
+
+  /**
+   * Compare the time spent reading a large array of records with the typed
+   * accessors generated for JsonBuilder and with the Properties getters the
+   * generated classes used before.
+   */
+  private void runJsonBenchmark() {
+    final JsArray<Properties> records = createJsonRecords(10000);
+    final JsonRecord r = GWT.create(JsonRecord.class);
+    runComparison("Accessors", new String[]{"properties", "typed"}, new Function() {
+      public void f() {
+        for (int i = 0, l = records.length(); i < l; i++) {
+          r.load(records.get(i));
+          Properties p = r.getProperties();
+          jsonSum += (int) p.getFloat("id") + (double) p.getFloat("price")
+              + (p.getBoolean("active") ? 1 : 0) + p.getStr("name").length();
+        }
+      }
+    }, new Function() {
+      public void f() {
+        for (int i = 0, l = records.length(); i < l; i++) {
+          r.load(records.get(i));
+          jsonSum += r.getId() + r.getPrice() + (r.getActive() ? 1 : 0) + r.getName().length();
+        }
+      }
+    });
+  }
+
+  /**
+   * Show the time per call of each function, running them repeatedly at
+   * least min_time milliseconds. The first round warms up, the second one
+   * is measured.
+   */
+  private void runComparison(String title, String[] names, Function... functions) {
+    grid = new FlexTable();
+    grid.addStyleName("resultstable");
+    RootPanel.get("results").clear();
+    RootPanel.get("results").add(grid);
+    $("#results").show();
+    grid.setText(0, 0, title);
+    grid.setText(0, 1, "Time per round");
+
+    double[] times = new double[functions.length];
+    for (int n = 0; n < 2; n++) {
+      for (int i = 0; i < functions.length; i++) {
+        long start = System.currentTimeMillis();
+        int numCalls = 0;
+        do {
+          functions[i].f();
+          numCalls++;
+        } while (System.currentTimeMillis() - start < min_time);
+        times[i] = (double) (System.currentTimeMillis() - start) / numCalls;
+      }
+    }
+    int winner = 0;
+    for (int i = 0; i < functions.length; i++) {
+      grid.setText(i + 1, 0, names[i]);
+      grid.setText(i + 1, 1, (((int) (times[i] * 1000)) / 1000.0) + " ms");
+      if (times[i] < times[winner]) {
+        winner = i;
+      }
+    }
+    setResultClass(winner, 0);
+  }
+
   private void d(int selnumber, int benchnumber, double time, int found) {
     String text = found < 0 ? "Error" : "" + (((int) (time * 10)) / 10.0) + " ms | " + found  + " found";
     d(selnumber, benchnumber,  text);